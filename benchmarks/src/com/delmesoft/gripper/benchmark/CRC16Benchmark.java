@@ -0,0 +1,66 @@
+package com.delmesoft.gripper.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.delmesoft.gripper.utils.CRC16;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CRC16Benchmark {
+
+	@Param({ "6", "13", "17", "64", "256" })
+	private int size;
+
+	private byte[] data;
+	private int prefixCRC;
+
+	@Setup
+	public void setup() {
+		data = new byte[size];
+		new Random(42).nextBytes(data);
+		prefixCRC = CRC16.crc16(data, 0, size / 2);
+	}
+
+	@Benchmark
+	public int[] calculateCRC() {
+		return CRC16.calculateCRC(data, 0, data.length);
+	}
+
+	@Benchmark
+	public int crc16() {
+		return CRC16.crc16(data, 0, data.length);
+	}
+
+	@Benchmark
+	public int updateByteByByte() {
+		int crc = CRC16.INITIAL;
+		for (int i = 0; i < data.length; i++) {
+			crc = CRC16.update(crc, data[i]);
+		}
+		return crc;
+	}
+
+	@Benchmark
+	public int updateFromPrefix() {
+		// constant first half, as a frame template
+		return CRC16.update(prefixCRC, data, size / 2, size - size / 2);
+	}
+
+}
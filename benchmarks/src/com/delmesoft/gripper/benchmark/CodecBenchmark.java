@@ -0,0 +1,70 @@
+package com.delmesoft.gripper.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.delmesoft.gripper.Gripper;
+import com.delmesoft.gripper.utils.CRC16;
+import com.delmesoft.gripper.utils.ModbusRtu;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+	private final byte[] poseFrame = ModbusRtu.writeMultipleRegisters(Gripper.DEFAULT_SLAVE_ID, Gripper.ACTION_REQUEST_REGISTER, (byte) 0x09, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00);
+	private final int posePrefixCRC = CRC16.crc16(poseFrame, 0, 10);
+	private final com.delmesoft.gripper.State state = new com.delmesoft.gripper.State(new byte[] { 0x09, 0x03, 0x06, (byte) 0xF9, 0x00, 0x00, 0x10, 0x10, 0x02, 0x00, 0x00 });
+
+	private int position;
+
+	@Benchmark
+	public byte[] encodePose() {
+		// same in place patching as SerialGripper/TcpGripper
+		poseFrame[10] = (byte) position++;
+		poseFrame[11] = (byte) 0xFF;
+		poseFrame[12] = 0x00;
+		ModbusRtu.appendCRC(poseFrame, posePrefixCRC, 10);
+		return poseFrame;
+	}
+
+	@Benchmark
+	public byte[] encodePoseFullCRC() {
+		poseFrame[10] = (byte) position++;
+		poseFrame[11] = (byte) 0xFF;
+		poseFrame[12] = 0x00;
+		ModbusRtu.appendCRC(poseFrame);
+		return poseFrame;
+	}
+
+	@Benchmark
+	public byte[] encodePoseAllocating() {
+		return ModbusRtu.writeMultipleRegisters(Gripper.DEFAULT_SLAVE_ID, Gripper.ACTION_REQUEST_REGISTER, (byte) 0x09, (byte) 0x00, (byte) 0x00, (byte) position++, (byte) 0xFF, (byte) 0x00);
+	}
+
+	@Benchmark
+	public void decodeState(Blackhole blackhole) {
+		blackhole.consume(state.isActive());
+		blackhole.consume(state.isOnGoToPosition());
+		blackhole.consume(state.getGripperStatus());
+		blackhole.consume(state.getObjectDetectionStatus());
+		blackhole.consume(state.getFaultStatus());
+		blackhole.consume(state.getPositionRequestEcho());
+		blackhole.consume(state.getPosition());
+		blackhole.consume(state.getCurrent());
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.delmesoft.gripper.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.delmesoft.gripper.Gripper;
+import com.delmesoft.gripper.ModbusGripper;
+import com.delmesoft.gripper.NioGripperGroup;
+import com.delmesoft.gripper.NioTcpGripper;
+import com.delmesoft.gripper.SerialGripper;
+import com.delmesoft.gripper.TcpGripper;
+import com.delmesoft.gripper.sim.GripperSimulator;
+import com.delmesoft.gripper.transport.MemoryTransport;
+
+/**
+ * Full pose/getState round trips against an in-process simulator. Run with
+ * -bm sample for latency percentiles and -prof gc for allocation per call.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RoundTripBenchmark {
+
+	@Param({ "tcp", "nio", "serial", "memory" })
+	private String transport;
+
+	private GripperSimulator simulator;
+	private NioGripperGroup group;
+	private Gripper gripper;
+	private final com.delmesoft.gripper.State state = new com.delmesoft.gripper.State(new byte[11]);
+
+	private int position;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		simulator = new GripperSimulator();
+		simulator.setActivationDelay(0, TimeUnit.MILLISECONDS);
+		simulator.listen(0);
+		if ("nio".equals(transport)) {
+			group = new NioGripperGroup();
+			gripper = new NioTcpGripper(group, "localhost", simulator.getPort());
+		} else if ("serial".equals(transport)) {
+			gripper = new SerialGripper(simulator.createSerialPort());
+		} else if ("memory".equals(transport)) {
+			gripper = new ModbusGripper(new MemoryTransport(simulator::process)); // protocol cost only
+		} else {
+			gripper = new TcpGripper("localhost", simulator.getPort());
+		}
+		gripper.connect();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		gripper.disconnect();
+		if (group != null) {
+			group.shutdown();
+		}
+		simulator.close();
+	}
+
+	@Benchmark
+	public void pose() throws Exception {
+		gripper.pose((byte) position++, (byte) 0xFF, (byte) 0x00);
+	}
+
+	@Benchmark
+	public com.delmesoft.gripper.State getState() throws Exception {
+		return gripper.getState();
+	}
+
+	@Benchmark
+	public com.delmesoft.gripper.State getStateReuse() throws Exception {
+		return gripper.getState(state);
+	}
+
+	@Benchmark
+	public com.delmesoft.gripper.State poseAndGetState() throws Exception {
+		return gripper.poseAndGetState((byte) position++, (byte) 0xFF, (byte) 0x00);
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.delmesoft.gripper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Activation wait shared by the Gripper implementations. The status is polled
+ * with an exponential backoff until gSTA reports the activation completed, so
+ * a gripper that never gets there fails after the timeout instead of keeping
+ * the caller and the link busy.
+ */
+final class Activation {
+
+	static final long DEFAULT_TIMEOUT = 10_000; // ms
+
+	private static final long MIN_BACKOFF = 1; // ms
+	private static final long MAX_BACKOFF = 100; // ms
+
+	private Activation() {
+	}
+
+	/**
+	 * Reads the gripper status (gSTA) of one device.
+	 */
+	@FunctionalInterface
+	interface StatusReader {
+
+		int readStatus() throws Exception;
+
+	}
+
+	/**
+	 * Poll the status until the activation is completed.
+	 * @param reader
+	 * @param timeout in milliseconds
+	 * @throws Exception the activation failed, timed out or the status could not be read
+	 */
+	static void await(StatusReader reader, long timeout) throws Exception {
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		long backoff = MIN_BACKOFF;
+		while (true) {
+			int status = reader.readStatus();
+			if (status == 0x03) {
+				return; // OK
+			} else if (status != 0x01) {
+				throw new RuntimeException("Restart error");
+			} else if (System.nanoTime() - deadline >= 0) {
+				throw new RuntimeException("Activation timeout");
+			}
+			Thread.sleep(backoff);
+			backoff = Math.min(backoff * 2, MAX_BACKOFF);
+		}
+	}
+
+	/**
+	 * Returns true if a gripper found in this State on connect may be reused
+	 * as is: activated, or with an activation in progress.
+	 * @param state
+	 * @return
+	 */
+	static boolean isAttachable(State state) {
+		return state.isActive() && state.getGripperStatus() != 0x00;
+	}
+
+	/**
+	 * Extract gSTA from a status response frame.
+	 * @param frame Read Holding Registers response starting at the status register
+	 * @return
+	 */
+	static int gripperStatus(byte[] frame) {
+		return (frame[3] >> 4) & 0b11;
+	}
+
+}
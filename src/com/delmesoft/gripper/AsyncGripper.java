@@ -0,0 +1,31 @@
+package com.delmesoft.gripper;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncGripper extends Gripper {
+
+	/**
+	 * Move gripper to desired position without blocking the caller.
+	 * @param position 0 -> open, 1 -> close
+	 * @param speed
+	 * @param force
+	 * @return future completed when the device acknowledges the command
+	 */
+	CompletableFuture<Void> poseAsync(double position, double speed, double force);
+
+	/**
+	 * Move gripper to desired position without blocking the caller.
+	 * @param position 0 -> open, 255 -> close
+	 * @param speed
+	 * @param force
+	 * @return future completed when the device acknowledges the command
+	 */
+	CompletableFuture<Void> poseAsync(byte position, byte speed, byte force);
+
+	/**
+	 * Read the current state of the Gripper without blocking the caller.
+	 * @return future completed with the Gripper State
+	 */
+	CompletableFuture<State> getStateAsync();
+
+}
@@ -0,0 +1,152 @@
+package com.delmesoft.gripper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every operation of a Gripper on a single I/O thread that owns the
+ * connection. Commands are executed and their futures completed in submission
+ * order.
+ */
+public class AsyncGripperAdapter implements AsyncGripper {
+
+	private final Gripper gripper;
+	private final ExecutorService executor;
+
+	private volatile Thread ioThread;
+
+	public AsyncGripperAdapter(Gripper gripper) {
+		this.gripper = gripper;
+		this.executor = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "AsyncGripper");
+			thread.setDaemon(true);
+			ioThread = thread;
+			return thread;
+		});
+	}
+
+	@Override
+	public void connect() throws Exception {
+		await(submit(() -> {
+			gripper.connect();
+			return null;
+		}));
+	}
+
+	@Override
+	public boolean isConnected() {
+		return gripper.isConnected();
+	}
+
+	/**
+	 * Disconnect on the I/O thread, or on the calling thread once the pending
+	 * commands are done if the adapter was shut down.
+	 */
+	@Override
+	public void disconnect() {
+		try {
+			await(submit(() -> {
+				gripper.disconnect();
+				return null;
+			}));
+		} catch (RejectedExecutionException e) { // shut down
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			gripper.disconnect();
+		} catch (Exception ignore) {
+		}
+	}
+
+	/**
+	 * Stop the I/O thread. Pending commands are still executed, disconnect()
+	 * remains available.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Override
+	public void pose(double position, double speed, double force) throws Exception {
+		await(poseAsync(position, speed, force));
+	}
+
+	@Override
+	public void pose(byte position, byte speed, byte force) throws Exception {
+		await(poseAsync(position, speed, force));
+	}
+
+	@Override
+	public State getState() throws Exception {
+		return await(getStateAsync());
+	}
+
+	@Override
+	public CompletableFuture<Void> poseAsync(double position, double speed, double force) {
+		return submit(() -> {
+			gripper.pose(position, speed, force);
+			return null;
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> poseAsync(byte position, byte speed, byte force) {
+		return submit(() -> {
+			gripper.pose(position, speed, force);
+			return null;
+		});
+	}
+
+	@Override
+	public CompletableFuture<State> getStateAsync() {
+		return submit(gripper::getState);
+	}
+
+	private <T> CompletableFuture<T> submit(Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		if (Thread.currentThread() == ioThread) { // called from a completion stage, avoid self deadlock
+			try {
+				future.complete(task.call());
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(task.call());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (Exception e) { // rejected after shutdown
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private static <T> T await(CompletableFuture<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}
+
+	public Gripper getGripper() {
+		return gripper;
+	}
+
+}
@@ -0,0 +1,190 @@
+package com.delmesoft.gripper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Gripper decorator that waits for the end of a motion instead of sleeping a
+ * fixed time. The arrival time is estimated from the commanded speed and the
+ * position delta, polling is sparse far from it and dense near it.
+ */
+public class AwaitableGripper implements Gripper {
+
+	private final Gripper gripper;
+
+	// 2F-85 defaults
+	private double stroke = 85.0; // mm
+	private double minSpeed = 20.0; // mm/s
+	private double maxSpeed = 150.0; // mm/s
+
+	private long minPollInterval = TimeUnit.MILLISECONDS.toNanos(2);
+	private long maxPollInterval = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private volatile int lastPosition = -1; // unknown
+	private volatile int targetPosition = -1;
+	private volatile long arrivalTime;
+
+	public AwaitableGripper(Gripper gripper) {
+		this.gripper = gripper;
+	}
+
+	@Override
+	public void connect() throws Exception {
+		gripper.connect();
+	}
+
+	@Override
+	public boolean isConnected() {
+		return gripper.isConnected();
+	}
+
+	@Override
+	public void disconnect() {
+		gripper.disconnect();
+	}
+
+	@Override
+	public void pose(double position, double speed, double force) throws Exception {
+		final byte p = (byte) (255.0 * position);
+		final byte s = (byte) (255.0 * speed);
+		final byte f = (byte) (255.0 * force);
+		pose(p, s, f);
+	}
+
+	@Override
+	public void pose(byte position, byte speed, byte force) throws Exception {
+		gripper.pose(position, speed, force);
+		commanded(position, speed);
+	}
+
+	@Override
+	public State poseAndGetState(byte position, byte speed, byte force) throws Exception {
+		State state = gripper.poseAndGetState(position, speed, force);
+		commanded(position, speed);
+		return observed(state);
+	}
+
+	@Override
+	public State getState() throws Exception {
+		return observed(gripper.getState());
+	}
+
+	@Override
+	public State getState(State state) throws Exception {
+		return observed(gripper.getState(state));
+	}
+
+	private void commanded(byte position, byte speed) {
+		int target = position & 0xFF;
+		int delta = lastPosition < 0 ? 255 : Math.abs(target - lastPosition);
+		double velocity = minSpeed + (maxSpeed - minSpeed) * (speed & 0xFF) / 255.0; // mm/s
+		double travel = stroke * delta / 255.0; // mm
+		arrivalTime = System.nanoTime() + (long) (travel / velocity * 1e9);
+		targetPosition = target;
+	}
+
+	private State observed(State state) {
+		lastPosition = state.getPosition() & 0xFF;
+		return state;
+	}
+
+	/**
+	 * Wait until the fingers stop, either at the requested position or on an object.
+	 * @param timeout in milliseconds
+	 * @return State once gOBJ != 0
+	 * @throws TimeoutException if the fingers are still moving after the timeout
+	 * @throws RuntimeException at once on a major fault (gFLT 0x0A - 0x0F, reset required) or no motion request (gGTO),
+	 * priority and minor faults (0x05 - 0x09) clear by themselves and are waited for
+	 * @throws Exception
+	 */
+	public State awaitMotionComplete(long timeout) throws Exception {
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		while (true) {
+			State state = getState();
+			if (isStopped(state)) {
+				return state;
+			}
+			long now = System.nanoTime();
+			if (now - deadline >= 0) {
+				throw new TimeoutException("Motion not completed after " + timeout + " ms");
+			}
+			LockSupport.parkNanos(Math.min(pollInterval(now), deadline - now));
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	/**
+	 * Wait until the fingers stop and report whether they stopped on an object.
+	 * @param timeout in milliseconds
+	 * @return true if an object was detected, false if the requested position was reached
+	 * @throws TimeoutException if the fingers are still moving after the timeout
+	 * @throws RuntimeException at once on a major fault (gFLT 0x0A - 0x0F, reset required) or no motion request (gGTO),
+	 * priority and minor faults (0x05 - 0x09) clear by themselves and are waited for
+	 * @throws Exception
+	 */
+	public boolean awaitObjectDetected(long timeout) throws Exception {
+		int status = awaitMotionComplete(timeout).getObjectDetectionStatus();
+		return status == 0x01 || status == 0x02;
+	}
+
+	private boolean isStopped(State state) {
+		if ((state.getFaultStatus() & 0x0F) >= 0x0A) { // gFLT major fault, the fingers will not get there
+			throw new RuntimeException(String.format("Gripper fault: 0x%02X", state.getFaultStatus() & 0xFF));
+		}
+		int target = targetPosition;
+		if (target >= 0 && (state.getPositionRequestEcho() & 0xFF) != target) {
+			return false; // status still reflects the previous request
+		}
+		if (!state.isOnGoToPosition()) { // gOBJ is meaningless without gGTO
+			throw new RuntimeException("Gripper stopped: gGTO not set");
+		}
+		return state.getObjectDetectionStatus() != 0x00;
+	}
+
+	private long pollInterval(long now) {
+		long remaining = arrivalTime - now;
+		if (remaining <= 0) {
+			return minPollInterval; // overdue, the stop is imminent
+		}
+		// halve the distance to the estimated arrival time
+		return Math.max(minPollInterval, Math.min(maxPollInterval, remaining / 2));
+	}
+
+	/**
+	 * Set the kinematic model used to estimate the arrival time.
+	 * @param stroke finger stroke in mm
+	 * @param minSpeed speed at speed byte 0 in mm/s
+	 * @param maxSpeed speed at speed byte 255 in mm/s
+	 */
+	public void setKinematics(double stroke, double minSpeed, double maxSpeed) {
+		this.stroke = stroke;
+		this.minSpeed = minSpeed;
+		this.maxSpeed = maxSpeed;
+	}
+
+	/**
+	 * Set the polling interval bounds.
+	 * @param minPollInterval in milliseconds, used near the estimated arrival
+	 * @param maxPollInterval in milliseconds, used far from the estimated arrival
+	 */
+	public void setPollInterval(long minPollInterval, long maxPollInterval) {
+		this.minPollInterval = TimeUnit.MILLISECONDS.toNanos(minPollInterval);
+		this.maxPollInterval = TimeUnit.MILLISECONDS.toNanos(maxPollInterval);
+	}
+
+	/**
+	 * Returns the estimated arrival time of the last commanded motion.
+	 * @return System.nanoTime() based estimation
+	 */
+	public long getArrivalTime() {
+		return arrivalTime;
+	}
+
+	public Gripper getGripper() {
+		return gripper;
+	}
+
+}
@@ -1,10 +1,22 @@
 package com.delmesoft.gripper;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public interface Gripper {
 	
+	public static final int DEFAULT_SLAVE_ID = 0x09;
+	public static final int ACTION_REQUEST_REGISTER = 0x03E8;
+	public static final int STATUS_REGISTER = 0x07D0;
+	
 	public static final byte[] RESPONSE_ACK = { 0x09, 0x10, 0x03, (byte) 0xE8, 0x00, 0x03, 0x01, 0x30 };
-	public static final byte[] ACTIVATION_COMPLETE = { 0x09, 0x03, 0x02, 0x11, 0x00, 0x55, (byte) 0xD5 };
-	public static final byte[] ACTIVATION_PENDING  = { 0x09, 0x03, 0x02, 0x31, 0x00, 0x4C,        0x15 };
+	public static final byte[] ACTIVATION_COMPLETE = { 0x09, 0x03, 0x02, 0x31, 0x00, 0x4C,        0x15 }; // gSTA = 0x03
+	public static final byte[] ACTIVATION_PENDING  = { 0x09, 0x03, 0x02, 0x11, 0x00, 0x55, (byte) 0xD5 }; // gSTA = 0x01
 		
 	/**
 	 * Open a connection with the device.
@@ -25,7 +37,7 @@ public interface Gripper {
 	
 	/**
 	 * Move gripper to desired position.
-	 * @param position 0 -> close, 1 -> open
+	 * @param position 0 -> open, 1 -> close
 	 * @param speed 
 	 * @param force
 	 */
@@ -33,7 +45,7 @@ public interface Gripper {
 
 	/**
 	 * Move gripper to desired position.
-	 * @param position 0 -> close, 255 -> open
+	 * @param position 0 -> open, 255 -> close
 	 * @param speed 
 	 * @param force
 	 * @throws Exception 
@@ -46,5 +58,103 @@ public interface Gripper {
 	 * @throws Exception
 	 */
 	State getState() throws Exception;
+
+	/**
+	 * Reads the current state of the Gripper into a caller owned instance.
+	 * @param state State to decode into
+	 * @return the given State
+	 * @throws Exception
+	 */
+	default State getState(State state) throws Exception {
+		State current = getState();
+		state.setData(current.getData());
+		state.setTimestamp(current.getTimestamp());
+		return state;
+	}
+
+	/**
+	 * Move gripper to desired position and read the resulting state.
+	 * @param position 0 -> open, 1 -> close
+	 * @param speed
+	 * @param force
+	 * @return Gripper State after the command
+	 * @throws Exception
+	 */
+	default State poseAndGetState(double position, double speed, double force) throws Exception {
+		final byte p = (byte) (255.0 * position);
+		final byte s = (byte) (255.0 * speed);
+		final byte f = (byte) (255.0 * force);
+		return poseAndGetState(p, s, f);
+	}
+
+	/**
+	 * Move gripper to desired position and read the resulting state.
+	 * @param position 0 -> open, 255 -> close
+	 * @param speed
+	 * @param force
+	 * @return Gripper State after the command
+	 * @throws Exception
+	 */
+	default State poseAndGetState(byte position, byte speed, byte force) throws Exception {
+		pose(position, speed, force);
+		return getState();
+	}
+
+	/**
+	 * Connect the given grippers in parallel, one thread per gripper.
+	 * @param grippers
+	 * @throws Exception the first failure, the others are added as suppressed
+	 */
+	static void connectAll(Gripper... grippers) throws Exception {
+		connectAll(Arrays.asList(grippers));
+	}
+
+	/**
+	 * Connect the given grippers in parallel, one thread per gripper.
+	 * @param grippers
+	 * @throws Exception the first failure, the others are added as suppressed
+	 */
+	static void connectAll(Collection<? extends Gripper> grippers) throws Exception {
+		if (grippers.isEmpty()) {
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(grippers.size(), r -> {
+			Thread thread = new Thread(r, "Gripper-connect");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			CompletableFuture<?>[] futures = new CompletableFuture<?>[grippers.size()];
+			int i = 0;
+			for (Gripper gripper : grippers) {
+				futures[i++] = CompletableFuture.runAsync(() -> {
+					try {
+						gripper.connect();
+					} catch (Exception e) {
+						throw new CompletionException(e);
+					}
+				}, executor);
+			}
+			Exception error = null;
+			for (CompletableFuture<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					Exception exception = cause instanceof Exception ? (Exception) cause : e;
+					if (error == null) {
+						error = exception;
+					} else {
+						error.addSuppressed(exception);
+					}
+				}
+			}
+			if (error != null) {
+				throw error;
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,272 @@
+package com.delmesoft.gripper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.delmesoft.gripper.utils.ModbusException;
+import com.delmesoft.gripper.utils.ModbusRtu;
+import com.delmesoft.gripper.utils.ModbusRtuParser;
+import com.delmesoft.gripper.utils.SyncSerialPort;
+
+/**
+ * Finds the grippers connected to the serial ports. Every port is probed on
+ * its own thread with a single status read (Read Holding Registers at 0x07D0)
+ * per candidate baud rate and slave ID, so scanning many ports takes about as
+ * long as scanning one. The probe never writes a register: an active gripper
+ * keeps its grip and no activation cycle is started.
+ * <p>
+ * Ports that cannot be opened, e.g. in use by a running gripper, are skipped.
+ */
+public class GripperDiscovery {
+
+	private int[] baudRates = { 115200, 57600, 38400, 19200, 9600 };
+	private int[] slaveIds = { Gripper.DEFAULT_SLAVE_ID };
+	private int responseTime = 50; // ms, allowed to the device on top of the line time
+
+	/**
+	 * Probe every serial port of the system.
+	 * @return grippers found, in port order
+	 * @throws InterruptedException
+	 */
+	public List<Device> discover() throws InterruptedException {
+		return discover(listPorts());
+	}
+
+	/**
+	 * Probe the given ports in parallel.
+	 * @param ports system port names, i.e. "COM3" or "ttyUSB0"
+	 * @return grippers found, in port order
+	 * @throws InterruptedException
+	 */
+	public List<Device> discover(Collection<String> ports) throws InterruptedException {
+		List<Device> devices = new ArrayList<>();
+		if (ports.isEmpty()) {
+			return devices;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(ports.size(), r -> {
+			Thread thread = new Thread(r, "GripperDiscovery");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<List<Device>>> futures = new ArrayList<>();
+			for (String port : ports) {
+				futures.add(executor.submit(() -> probe(port)));
+			}
+			for (Future<List<Device>> future : futures) {
+				try {
+					devices.addAll(future.get());
+				} catch (ExecutionException ignore) { // port failed, nothing found there
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return devices;
+	}
+
+	/**
+	 * Returns the serial ports of the system.
+	 * @return system port names
+	 */
+	public static List<String> listPorts() {
+		List<String> ports = new ArrayList<>();
+		for (com.fazecast.jSerialComm.SerialPort serialPort : com.fazecast.jSerialComm.SerialPort.getCommPorts()) {
+			ports.add(serialPort.getSystemPortName());
+		}
+		return ports;
+	}
+
+	/**
+	 * Probe one port at every candidate baud rate until a gripper answers.
+	 * @param port
+	 * @return grippers found on the port, one per answering slave ID
+	 */
+	protected List<Device> probe(String port) {
+		List<Device> devices = new ArrayList<>();
+		for (int baudRate : baudRates) {
+			SyncSerialPort serialPort = createSerialPort(port);
+			serialPort.setBaudRate(baudRate);
+			final int timeout = (int) TimeUnit.NANOSECONDS.toMillis(serialPort.getFrameTime(8 + 11) + 2 * serialPort.getInterFrameDelay() + 999_999) + responseTime;
+			serialPort.setTimeout(timeout);
+			try {
+				serialPort.connect();
+			} catch (RuntimeException e) { // busy or gone
+				return devices;
+			}
+			try {
+				for (int slaveId : slaveIds) {
+					State state = readState(serialPort, slaveId, timeout);
+					if (state != null) {
+						devices.add(new Device(port, baudRate, slaveId, state));
+					}
+				}
+			} finally {
+				serialPort.disconnect();
+			}
+			if (!devices.isEmpty()) {
+				break;
+			}
+		}
+		return devices;
+	}
+
+	private State readState(SyncSerialPort serialPort, int slaveId, int timeout) {
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		// bounded by the deadline, noise at a wrong baud rate keeps the reads returning
+		ModbusRtuParser parser = new ModbusRtuParser(new ModbusRtuParser.Source() {
+			@Override
+			public int read(byte[] data, int offset, int len) throws IOException {
+				if (System.nanoTime() - deadline >= 0) {
+					throw new InterruptedIOException("Probe timeout");
+				}
+				return serialPort.read(data, offset, len);
+			}
+			@Override
+			public int available() throws IOException {
+				return serialPort.available();
+			}
+		});
+		try {
+			serialPort.writeBytes(ModbusRtu.readHoldingRegisters(slaveId, Gripper.STATUS_REGISTER, 3));
+			byte[] frame = new byte[11];
+			if (parser.readFrame(slaveId, ModbusRtu.READ_HOLDING_REGISTERS, frame) != frame.length) {
+				return null;
+			}
+			return new State(frame);
+		} catch (ModbusException e) { // a Modbus device, not a gripper
+			return null;
+		} catch (IOException e) { // no answer
+			return null;
+		}
+	}
+
+	/**
+	 * Create the port to probe, override to use simulated ports.
+	 * @param port
+	 * @return
+	 */
+	protected SyncSerialPort createSerialPort(String port) {
+		SyncSerialPort serialPort = new SyncSerialPort();
+		serialPort.setPort(port);
+		return serialPort;
+	}
+
+	public int[] getBaudRates() {
+		return baudRates.clone();
+	}
+
+	/**
+	 * Set the baud rates to try, in order.
+	 * @param baudRates
+	 */
+	public void setBaudRates(int... baudRates) {
+		this.baudRates = baudRates.clone();
+	}
+
+	public int[] getSlaveIds() {
+		return slaveIds.clone();
+	}
+
+	/**
+	 * Set the slave IDs to probe on every port.
+	 * @param slaveIds
+	 */
+	public void setSlaveIds(int... slaveIds) {
+		this.slaveIds = slaveIds.clone();
+	}
+
+	public int getResponseTime() {
+		return responseTime;
+	}
+
+	/**
+	 * Set the time allowed to the device to answer, the probe timeout is the
+	 * line time of the request and the response plus this.
+	 * @param responseTime in milliseconds
+	 */
+	public void setResponseTime(int responseTime) {
+		this.responseTime = responseTime;
+	}
+
+	/**
+	 * Gripper found by a discovery.
+	 */
+	public static class Device {
+
+		private final String port;
+		private final int baudRate;
+		private final int slaveId;
+		private final State state;
+
+		Device(String port, int baudRate, int slaveId, State state) {
+			this.port = port;
+			this.baudRate = baudRate;
+			this.slaveId = slaveId;
+			this.state = state;
+		}
+
+		public String getPort() {
+			return port;
+		}
+
+		public int getBaudRate() {
+			return baudRate;
+		}
+
+		public int getSlaveId() {
+			return slaveId;
+		}
+
+		/**
+		 * Returns the State read by the probe.
+		 * @return
+		 */
+		public State getState() {
+			return state;
+		}
+
+		/**
+		 * Returns true if the gripper was activated (gACT set and gSTA 0x03).
+		 * @return
+		 */
+		public boolean isActivated() {
+			return state.isActive() && state.getGripperStatus() == 0x03;
+		}
+
+		/**
+		 * Create a SerialGripper for this device with warm attach enabled, so
+		 * connect() keeps an active grip like the probe did.
+		 * @return
+		 */
+		public SerialGripper createGripper() {
+			if (slaveId != Gripper.DEFAULT_SLAVE_ID) {
+				throw new IllegalStateException("Slave ID " + slaveId + " is only reachable through a ModbusRtuBus");
+			}
+			SerialGripper gripper = new SerialGripper(port, baudRate);
+			gripper.setWarmAttach(true);
+			return gripper;
+		}
+
+		@Override
+		public String toString() {
+			return "Device [port=" + port + ", baudRate=" + baudRate + ", slaveId=" + slaveId + ", activated=" + isActivated() + ", state=" + state + "]";
+		}
+
+	}
+
+	@Override
+	public String toString() {
+		return "GripperDiscovery [baudRates=" + Arrays.toString(baudRates) + ", slaveIds=" + Arrays.toString(slaveIds) + ", responseTime=" + responseTime + "]";
+	}
+
+}
@@ -0,0 +1,408 @@
+package com.delmesoft.gripper;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the same operation on many grippers concurrently. Every device call is
+ * a separate task, a device that fails or hangs only fails its own entry of
+ * the {@link Result}.
+ * <p>
+ * On Java 21+ every call runs on a virtual thread, so thousands of devices do
+ * not need thousands of platform threads. The device I/O of a ModbusGripper
+ * runs under ReentrantLocks, a blocked call does not pin its carrier. On older
+ * runtimes the calls share a bounded pool of platform threads and wait for a
+ * free one.
+ * <p>
+ * The timeout applies to every call from the moment it starts, time spent
+ * queued for a pool thread does not count.
+ */
+public class GripperFleet implements AutoCloseable {
+
+	public static final int DEFAULT_THREADS = 64;
+
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	private final Map<String, Member> members = new LinkedHashMap<>();
+
+	private final ExecutorService executor;
+	private final boolean ownExecutor;
+	private final boolean virtual;
+
+	private long timeout = 15_000; // ms, a cold connect: ready probe and activation
+
+	/**
+	 * Virtual threads when available, {@value #DEFAULT_THREADS} platform threads otherwise.
+	 */
+	public GripperFleet() {
+		this(DEFAULT_THREADS);
+	}
+
+	/**
+	 * Virtual threads when available, a bounded pool of platform threads otherwise.
+	 * @param threads platform pool size, only used without virtual threads
+	 */
+	public GripperFleet(int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Invalid thread count: " + threads);
+		}
+		ExecutorService executor = newVirtualThreadExecutor();
+		this.virtual = executor != null;
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads, r -> {
+				Thread thread = new Thread(r, "GripperFleet-" + THREAD_COUNT.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		this.executor = executor;
+		this.ownExecutor = true;
+	}
+
+	/**
+	 * Run the device calls on a caller owned executor, it is not shut down by {@link #close()}.
+	 * @param executor
+	 */
+	public GripperFleet(ExecutorService executor) {
+		this.executor = executor;
+		this.ownExecutor = false;
+		this.virtual = false;
+	}
+
+	private static ExecutorService newVirtualThreadExecutor() {
+		try { // Java 21+, looked up by reflection to keep the Java 8 target
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) { // missing, or preview only
+			return null;
+		}
+	}
+
+	/**
+	 * Add a gripper without group.
+	 * @param id unique id
+	 * @param gripper
+	 */
+	public void add(String id, Gripper gripper) {
+		add(id, null, gripper);
+	}
+
+	/**
+	 * Add a gripper.
+	 * @param id unique id
+	 * @param group e.g. the cell, may be null
+	 * @param gripper
+	 */
+	public synchronized void add(String id, String group, Gripper gripper) {
+		if (members.containsKey(id)) {
+			throw new IllegalArgumentException("Duplicate gripper id: " + id);
+		}
+		members.put(id, new Member(id, group, gripper));
+	}
+
+	/**
+	 * Remove a gripper, it is not disconnected.
+	 * @param id
+	 * @return the removed gripper, null if unknown
+	 */
+	public synchronized Gripper remove(String id) {
+		Member member = members.remove(id);
+		return member == null ? null : member.gripper;
+	}
+
+	public synchronized Gripper get(String id) {
+		Member member = members.get(id);
+		return member == null ? null : member.gripper;
+	}
+
+	/**
+	 * Returns the ids of a group.
+	 * @param group null for every gripper
+	 * @return ids in insertion order
+	 */
+	public synchronized List<String> getIds(String group) {
+		List<String> ids = new ArrayList<>();
+		for (Member member : members.values()) {
+			if (group == null || group.equals(member.group)) {
+				ids.add(member.id);
+			}
+		}
+		return ids;
+	}
+
+	public synchronized int size() {
+		return members.size();
+	}
+
+	private synchronized List<Member> select(String group) {
+		List<Member> selection = new ArrayList<>();
+		for (Member member : members.values()) {
+			if (group == null || group.equals(member.group)) {
+				selection.add(member);
+			}
+		}
+		return selection;
+	}
+
+	/**
+	 * Run an operation on every gripper of a group concurrently and wait for
+	 * the results. Calls still running the timeout after they started are
+	 * cancelled and reported as a TimeoutException.
+	 * @param group null for every gripper
+	 * @param operation
+	 * @return one value or error per gripper
+	 * @throws InterruptedException the pending calls are cancelled
+	 */
+	public <T> Result<T> execute(String group, Operation<T> operation) throws InterruptedException {
+		final List<Member> selection = select(group);
+		final List<Call<T>> calls = new ArrayList<>(selection.size());
+		for (Member member : selection) {
+			Call<T> call = new Call<>(member.gripper, operation);
+			calls.add(call);
+			executor.execute(call);
+		}
+		final Result<T> result = new Result<>();
+		final long timeout = getTimeout();
+		final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+		try {
+			for (int i = 0; i < calls.size(); i++) {
+				final String id = selection.get(i).id;
+				final Call<T> call = calls.get(i);
+				try {
+					result.values.put(id, call.await(timeoutNanos));
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					result.errors.put(id, cause instanceof Exception ? (Exception) cause : e);
+				} catch (TimeoutException e) {
+					call.cancel(true);
+					result.errors.put(id, new TimeoutException("No result within " + timeout + " ms"));
+				}
+			}
+		} catch (InterruptedException e) {
+			for (Future<T> call : calls) {
+				call.cancel(true);
+			}
+			throw e;
+		}
+		return result;
+	}
+
+	/**
+	 * Connect every gripper of a group.
+	 * @param group null for every gripper
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public Result<Void> connect(String group) throws InterruptedException {
+		return execute(group, gripper -> {
+			gripper.connect();
+			return null;
+		});
+	}
+
+	/**
+	 * Disconnect every gripper of a group.
+	 * @param group null for every gripper
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public Result<Void> disconnect(String group) throws InterruptedException {
+		return execute(group, gripper -> {
+			gripper.disconnect();
+			return null;
+		});
+	}
+
+	/**
+	 * Move every gripper of a group to the desired position.
+	 * @param group null for every gripper
+	 * @param position 0 -> open, 1 -> close
+	 * @param speed
+	 * @param force
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public Result<Void> pose(String group, double position, double speed, double force) throws InterruptedException {
+		return execute(group, gripper -> {
+			gripper.pose(position, speed, force);
+			return null;
+		});
+	}
+
+	/**
+	 * Move every gripper of a group to the desired position.
+	 * @param group null for every gripper
+	 * @param position 0 -> open, 255 -> close
+	 * @param speed
+	 * @param force
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public Result<Void> pose(String group, byte position, byte speed, byte force) throws InterruptedException {
+		return execute(group, gripper -> {
+			gripper.pose(position, speed, force);
+			return null;
+		});
+	}
+
+	/**
+	 * Read the State of every gripper of a group.
+	 * @param group null for every gripper
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public Result<State> getStates(String group) throws InterruptedException {
+		return execute(group, Gripper::getState);
+	}
+
+	/**
+	 * Shut down the fleet executor unless it is caller owned. Grippers are not disconnected.
+	 */
+	@Override
+	public void close() {
+		if (ownExecutor) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns true if the device calls run on virtual threads.
+	 * @return
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	public synchronized long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @param timeout for the call of each gripper from the moment it starts, in milliseconds
+	 */
+	public synchronized void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	@FunctionalInterface
+	public interface Operation<T> {
+
+		T apply(Gripper gripper) throws Exception;
+
+	}
+
+	/**
+	 * Outcome of a fleet operation, a value or an error per gripper id.
+	 */
+	public static class Result<T> {
+
+		private final Map<String, T> values = new LinkedHashMap<>();
+		private final Map<String, Exception> errors = new LinkedHashMap<>();
+
+		/**
+		 * @return values of the grippers that succeeded, by id
+		 */
+		public Map<String, T> getValues() {
+			return Collections.unmodifiableMap(values);
+		}
+
+		/**
+		 * @return errors of the grippers that failed, by id
+		 */
+		public Map<String, Exception> getErrors() {
+			return Collections.unmodifiableMap(errors);
+		}
+
+		public boolean isSuccess() {
+			return errors.isEmpty();
+		}
+
+		/**
+		 * Throw if any gripper failed.
+		 * @throws RuntimeException caused by the first error, the others are added as suppressed
+		 */
+		public void check() {
+			if (!errors.isEmpty()) {
+				RuntimeException exception = null;
+				for (Map.Entry<String, Exception> entry : errors.entrySet()) {
+					if (exception == null) {
+						exception = new RuntimeException(errors.size() + " of " + (errors.size() + values.size()) + " grippers failed, first: " + entry.getKey(), entry.getValue());
+					} else {
+						exception.addSuppressed(entry.getValue());
+					}
+				}
+				throw exception;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Result [succeeded=" + values.size() + ", failed=" + errors.keySet() + "]";
+		}
+
+	}
+
+	/**
+	 * Device call that knows when it started running.
+	 */
+	private static class Call<T> extends FutureTask<T> {
+
+		private volatile long started; // System.nanoTime(), 0 while queued
+
+		Call(Gripper gripper, Operation<T> operation) {
+			super(() -> operation.apply(gripper));
+		}
+
+		@Override
+		public void run() {
+			started = System.nanoTime() | 1; // never 0
+			super.run();
+		}
+
+		/**
+		 * Wait for the result, at most timeout after the call started.
+		 */
+		T await(long timeout) throws InterruptedException, ExecutionException, TimeoutException {
+			while (true) {
+				final long started = this.started;
+				// while queued, check again after a timeout: the call may have started
+				final long wait = started == 0 ? timeout : started + timeout - System.nanoTime();
+				try {
+					return get(Math.max(wait, 0), TimeUnit.NANOSECONDS);
+				} catch (TimeoutException e) {
+					if (started != 0) {
+						throw e;
+					}
+				}
+			}
+		}
+
+	}
+
+	private static class Member {
+
+		final String id;
+		final String group;
+		final Gripper gripper;
+
+		Member(String id, String group, Gripper gripper) {
+			this.id = id;
+			this.group = group;
+			this.gripper = gripper;
+		}
+
+	}
+
+}
@@ -0,0 +1,712 @@
+package com.delmesoft.gripper;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.delmesoft.gripper.metrics.GripperMetrics;
+import com.delmesoft.gripper.metrics.ModbusTransactionEvent;
+import com.delmesoft.gripper.transport.Transport;
+import com.delmesoft.gripper.utils.CRC16;
+import com.delmesoft.gripper.utils.ModbusException;
+import com.delmesoft.gripper.utils.ModbusRtu;
+import com.delmesoft.gripper.utils.ModbusRtuParser;
+import com.delmesoft.gripper.utils.TransactionScheduler;
+import com.delmesoft.gripper.utils.TransactionScheduler.Priority;
+
+/**
+ * Robotiq 2F protocol over any {@link Transport}: activation, pose and status
+ * frames, acknowledgement checks, pipelining, metrics and JFR events.
+ * <p>
+ * Concurrent callers take turns through a {@link TransactionScheduler}: pose
+ * commands go before queued status reads, which go before connection and raw
+ * access, so a busy monitoring thread delays a pose by one status round trip
+ * at most.
+ * <p>
+ * The I/O runs under a ReentrantLock instead of a monitor, so a virtual thread
+ * blocked on the transport does not pin its carrier thread.
+ */
+public class ModbusGripper implements Gripper {
+
+	private static final byte[] STATUS_REQUEST = { 0x09, 0x03, 0x07, (byte) 0xD0, 0x00, 0x03, 0x04, 0x0E }; // 09 03 07 D0 00 03 04 0E
+	private static final byte[] ACTIVATION_REQUEST = { 0x09, 0x03, 0x07, (byte) 0xD0, 0x00, 0x01, (byte) 0x85, (byte) 0xCF };
+
+	// 09 10 03 E8 00 03 06 09 00 00 position speed force CRC
+	private static final byte[] POSE_TEMPLATE = ModbusRtu.writeMultipleRegisters(DEFAULT_SLAVE_ID, ACTION_REQUEST_REGISTER, (byte) 0x09, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00);
+	private static final int POSE_PREFIX_CRC = CRC16.crc16(POSE_TEMPLATE, 0, 10);
+	// 09 17 07 D0 00 03 03 E8 00 03 06 09 00 00 position speed force CRC
+	private static final byte[] POSE_AND_READ_TEMPLATE = ModbusRtu.readWriteMultipleRegisters(DEFAULT_SLAVE_ID, STATUS_REGISTER, 3, ACTION_REQUEST_REGISTER, (byte) 0x09, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00);
+	private static final int POSE_AND_READ_PREFIX_CRC = CRC16.crc16(POSE_AND_READ_TEMPLATE, 0, 14);
+
+	private static final long MIN_BACKOFF = 1; // ms
+	private static final long MAX_BACKOFF = 100; // ms
+
+	private final Transport transport;
+	private final ModbusRtuParser parser;
+	private final TransactionScheduler scheduler = new TransactionScheduler();
+	private final ReentrantLock lock = new ReentrantLock(); // guards the transport, parser and buffers
+	private GripperMetrics metrics;
+	private boolean defaultMetrics; // registered on connect under the transport name
+
+	private boolean warmAttach;
+	private long readyTimeout = 2_000; // ms
+	private long activationTimeout = Activation.DEFAULT_TIMEOUT; // ms
+
+	private int pipelineDepth = 1;
+	private final ArrayDeque<Transaction> pipeline = new ArrayDeque<>();
+
+	// preallocated buffers, guarded by lock
+	private final byte[] poseFrame = POSE_TEMPLATE.clone();
+	private final byte[] response = new byte[8];
+	private final byte[] poseAndReadFrame = POSE_AND_READ_TEMPLATE.clone();
+
+	public ModbusGripper(Transport transport) {
+		this.transport = transport;
+		this.parser = new ModbusRtuParser(new ModbusRtuParser.Source() {
+			@Override
+			public int read(byte[] data, int offset, int len) throws IOException {
+				final GripperMetrics metrics = ModbusGripper.this.metrics;
+				if (metrics == null) {
+					return transport.read(data, offset, len);
+				}
+				final long start = System.nanoTime();
+				try {
+					return transport.read(data, offset, len);
+				} finally {
+					metrics.read().record(System.nanoTime() - start);
+				}
+			}
+			@Override
+			public int available() throws IOException {
+				return transport.available();
+			}
+		});
+		setMetrics(GripperMetrics.create(transport.getName()));
+		defaultMetrics = metrics != null;
+	}
+
+	// The scheduler is always acquired before the lock, never while holding it.
+
+	@Override
+	public void connect() throws Exception {
+		scheduler.acquire(Priority.DIAGNOSTICS);
+		lock.lock();
+		try {
+			if (!isConnected()) {
+				if (defaultMetrics) {
+					try {
+						metrics.register(transport.getName()); // host, port or serial port may have changed
+					} catch (Exception ignore) { // still usable without JMX
+					}
+				}
+				transport.open();
+				try {
+					parser.clear(); // bytes of a previous connection
+					State state = awaitReady();
+					if (warmAttach && Activation.isAttachable(state)) {
+						awaitActivation(); // already active or activating, keep the grip
+					} else {
+						restart();
+					}
+				} catch (Exception e) {
+					disconnect();
+					throw e;
+				}
+			}
+		} finally {
+			lock.unlock();
+			scheduler.release();
+		}
+	}
+
+	public void restart() throws Exception {
+		scheduler.acquire(Priority.DIAGNOSTICS);
+		lock.lock();
+		try {
+			final long start = metrics != null ? System.nanoTime() : 0L;
+			sync();
+			deactivate();
+			activate();
+			awaitActivation();
+			if (metrics != null) {
+				metrics.restart().record(System.nanoTime() - start);
+			}
+		} finally {
+			lock.unlock();
+			scheduler.release();
+		}
+	}
+
+	private State awaitReady() throws Exception {
+		// Probe the status until the device answers, instead of a fixed delay
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readyTimeout);
+		long backoff = MIN_BACKOFF;
+		while (true) {
+			try {
+				return getState();
+			} catch (IOException e) {
+				if (!transport.isOpen() || System.nanoTime() - deadline >= 0) {
+					throw new RuntimeException("Gripper not responding", e);
+				}
+			}
+			Thread.sleep(backoff);
+			backoff = Math.min(backoff * 2, MAX_BACKOFF);
+		}
+	}
+
+	private void awaitActivation() throws Exception {
+		final byte[] data = new byte[7];
+		Activation.await(() -> {
+			transact(ACTIVATION_REQUEST, ModbusRtu.READ_HOLDING_REGISTERS, data);
+			return Activation.gripperStatus(data);
+		}, activationTimeout);
+	}
+
+	@Override
+	public boolean isConnected() {
+		return transport.isOpen();
+	}
+
+	@Override
+	public void disconnect() {
+		lock.lock();
+		try {
+			if (isConnected()) {
+				transport.close();
+				fail(new EOFException("Disconnected"));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void write(byte[] data) throws Exception {
+		sync();
+		try {
+			parser.clear(); // drop late bytes of previous transactions
+			transport.write(data, 0, data.length);
+			transport.flush();
+		} catch (IOException e) {
+			lost(e);
+			throw e;
+		}
+	}
+
+	private void lost(IOException e) {
+		if (!transport.isRecoverable(e)) {
+			disconnect(); // link lost or stream out of sync
+		}
+	}
+
+	private int transact(byte[] request, int function, byte[] frame) throws Exception {
+		if (GripperMetrics.JFR_AVAILABLE) {
+			return transactRecorded(request, function, frame);
+		}
+		write(request);
+		return readFrame(function, frame);
+	}
+
+	private int transactRecorded(byte[] request, int function, byte[] frame) throws Exception {
+		// allocation removed by escape analysis while the event is disabled
+		ModbusTransactionEvent event = new ModbusTransactionEvent();
+		event.begin();
+		String outcome = ModbusTransactionEvent.IO_ERROR;
+		int length = 0;
+		long waitStart = 0L;
+		try {
+			write(request);
+			if (event.isEnabled()) {
+				waitStart = System.nanoTime();
+			}
+			length = readFrame(function, frame);
+			outcome = ModbusTransactionEvent.OK;
+			return length;
+		} catch (InterruptedIOException e) {
+			outcome = ModbusTransactionEvent.TIMEOUT;
+			throw e;
+		} catch (ModbusException e) {
+			outcome = ModbusTransactionEvent.EXCEPTION;
+			throw e;
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.gripper = transport.getName();
+				event.slaveId = DEFAULT_SLAVE_ID;
+				event.function = function;
+				event.bytesWritten = request.length;
+				event.bytesRead = length;
+				event.waitTime = waitStart != 0L ? System.nanoTime() - waitStart : 0L;
+				event.outcome = outcome;
+				event.commit();
+			}
+		}
+	}
+
+	private int readFrame(int function, byte[] frame) throws Exception {
+		try {
+			return parser.readFrame(DEFAULT_SLAVE_ID, function, frame);
+		} catch (IOException e) {
+			if (metrics != null && e instanceof InterruptedIOException) {
+				metrics.timeout();
+			}
+			lost(e);
+			throw e;
+		}
+	}
+
+	private boolean check(byte[] request) throws Exception {
+		transact(request, ModbusRtu.WRITE_MULTIPLE_REGISTERS, response);
+		if (isAck(response)) {
+			return true;
+		}
+		if (metrics != null) {
+			metrics.ackError();
+		}
+		return false;
+	}
+
+	private static boolean isAck(byte[] response) {
+		// CRC checked by the parser, the echo must match the request
+		for (int i = 2; i < 6; i++) {
+			if (response[i] != RESPONSE_ACK[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void deactivate() throws Exception {
+		// Deactivate gripper
+		byte[] data = { 0x09, 0x10, 0x03, (byte) 0xE8, 0x00, 0x03, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x73, 0x30 };
+		if (!check(data)) {
+			throw new RuntimeException("Deactivate error");
+		}
+	}
+
+	private void activate() throws Exception {
+		// Activate gripper
+		byte[] data = { 0x09, 0x10, 0x03, (byte) 0xE8, 0x00, 0x03, 0x06, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x72,
+				(byte) 0xE1 };
+		if (!check(data)) {
+			throw new RuntimeException("Activate error");
+		}
+	}
+
+	@Override
+	public void pose(double position, double speed, double force) throws Exception {
+		pose(position, speed, force, Priority.MOTION);
+	}
+
+	@Override
+	public void pose(byte position, byte speed, byte force) throws Exception {
+		pose(position, speed, force, Priority.MOTION);
+	}
+
+	/**
+	 * Move gripper to desired position in the given priority class.
+	 * @param position 0 -> open, 1 -> close
+	 * @param speed
+	 * @param force
+	 * @param priority EMERGENCY goes before every queued transaction
+	 * @throws Exception
+	 */
+	public void pose(double position, double speed, double force, Priority priority) throws Exception {
+		final byte p = (byte) (255.0 * position);
+		final byte s = (byte) (255.0 * speed);
+		final byte f = (byte) (255.0 * force);
+		pose(p, s, f, priority);
+	}
+
+	/**
+	 * Move gripper to desired position in the given priority class.
+	 * @param position 0 -> open, 255 -> close
+	 * @param speed
+	 * @param force
+	 * @param priority EMERGENCY goes before every queued transaction
+	 * @throws Exception
+	 */
+	public void pose(byte position, byte speed, byte force, Priority priority) throws Exception {
+		scheduler.acquire(priority);
+		lock.lock();
+		try {
+			final long start = metrics != null ? System.nanoTime() : 0L;
+			transmit(poseFrame(position, speed, force));
+			if (metrics != null) {
+				metrics.pose().record(System.nanoTime() - start);
+			}
+		} finally {
+			lock.unlock();
+			scheduler.release();
+		}
+	}
+
+	private byte[] poseFrame(byte position, byte speed, byte force) {
+		poseFrame[10] = (byte) clamp(position & 0xFF, 0, 255);
+		poseFrame[11] = (byte) clamp(speed & 0xFF, 0, 255);
+		poseFrame[12] = (byte) clamp(force & 0xFF, 0, 255);
+		ModbusRtu.appendCRC(poseFrame, POSE_PREFIX_CRC, 10);
+		return poseFrame;
+	}
+
+	private int clamp(int value, int min, int max) {
+		if (value < min) return min;
+		if (value > max) return max;
+		return value;
+	}
+
+	protected void send(byte[] data) throws Exception {
+		scheduler.acquire(Priority.DIAGNOSTICS);
+		lock.lock();
+		try {
+			ModbusRtu.appendCRC(data);
+			transmit(data);
+		} finally {
+			lock.unlock();
+			scheduler.release();
+		}
+	}
+
+	private void transmit(byte[] data) throws Exception {
+		if (isConnected()) {
+			if (!check(data)) {
+				throw new RuntimeException("Send data error");
+			}
+		}
+	}
+
+	@Override
+	public State getState() throws Exception {
+		return getState(new State(new byte[11]));
+	}
+
+	@Override
+	public State getState(State state) throws Exception {
+		scheduler.acquire(Priority.STATUS);
+		lock.lock();
+		try {
+			final long start = metrics != null ? System.nanoTime() : 0L;
+			byte[] data = state.getData();
+			if (data == null || data.length != 11) {
+				data = new byte[11];
+				state.setData(data);
+			}
+			if (transact(STATUS_REQUEST, ModbusRtu.READ_HOLDING_REGISTERS, data) != 11) {
+				throw new RuntimeException("Status error");
+			}
+			state.setTimestamp(System.nanoTime());
+			if (metrics != null) {
+				metrics.state().record(state.getTimestamp() - start);
+			}
+			return state;
+		} finally {
+			lock.unlock();
+			scheduler.release();
+		}
+	}
+
+	@Override
+	public State poseAndGetState(byte position, byte speed, byte force) throws Exception {
+		return poseAndGetState(position, speed, force, new State(new byte[11]));
+	}
+
+	/**
+	 * Move gripper to desired position and read the resulting state in a single
+	 * Read/Write Multiple Registers (0x17) transaction.
+	 * @param position 0 -> open, 255 -> close
+	 * @param speed
+	 * @param force
+	 * @param state State to decode into
+	 * @return the given State
+	 * @throws Exception
+	 */
+	public State poseAndGetState(byte position, byte speed, byte force, State state) throws Exception {
+		scheduler.acquire(Priority.MOTION);
+		lock.lock();
+		try {
+			poseAndReadFrame[14] = (byte) clamp(position & 0xFF, 0, 255);
+			poseAndReadFrame[15] = (byte) clamp(speed & 0xFF, 0, 255);
+			poseAndReadFrame[16] = (byte) clamp(force & 0xFF, 0, 255);
+			ModbusRtu.appendCRC(poseAndReadFrame, POSE_AND_READ_PREFIX_CRC, 14);
+			final long start = metrics != null ? System.nanoTime() : 0L;
+			byte[] data = state.getData();
+			if (data == null || data.length != 11) {
+				data = new byte[11];
+				state.setData(data);
+			}
+			if (transact(poseAndReadFrame, ModbusRtu.READ_WRITE_MULTIPLE_REGISTERS, data) != 11) {
+				throw new RuntimeException("Send data error");
+			}
+			state.setTimestamp(System.nanoTime());
+			if (metrics != null) {
+				metrics.poseAndRead().record(state.getTimestamp() - start);
+			}
+			return state;
+		} finally {
+			lock.unlock();
+			scheduler.release();
+		}
+	}
+
+	/**
+	 * Queue a pose command on the pipeline. The frame is written without waiting
+	 * for the response of the previous requests. The frames are flushed once
+	 * the pipeline is full, the oldest future is then completed before the
+	 * call returns; at depth 1 that is the future returned. The others complete
+	 * on the following calls or on sync().
+	 * @param position 0 -> open, 255 -> close
+	 * @param speed
+	 * @param force
+	 * @return future completed when the device acknowledges the command
+	 * @throws Exception
+	 */
+	public CompletableFuture<Void> pipelinePose(byte position, byte speed, byte force) throws Exception {
+		scheduler.acquire(Priority.MOTION);
+		lock.lock();
+		try {
+			byte[] data = poseFrame(position, speed, force);
+			CompletableFuture<Void> future = new CompletableFuture<>();
+			enqueue(data, new Transaction(ModbusRtu.WRITE_MULTIPLE_REGISTERS, 8) {
+				@Override
+				void complete(byte[] response) {
+					if (isAck(response)) {
+						future.complete(null);
+					} else {
+						if (metrics != null) {
+							metrics.ackError();
+						}
+						future.completeExceptionally(new RuntimeException("Send data error"));
+					}
+				}
+				@Override
+				void fail(Exception e) {
+					future.completeExceptionally(e);
+				}
+			});
+			return future;
+		} finally {
+			lock.unlock();
+			scheduler.release();
+		}
+	}
+
+	/**
+	 * Queue a status read on the pipeline, flushed and completed like
+	 * {@link #pipelinePose(byte, byte, byte)}.
+	 * @return future completed with the Gripper State
+	 * @throws Exception
+	 */
+	public CompletableFuture<State> pipelineGetState() throws Exception {
+		scheduler.acquire(Priority.STATUS);
+		lock.lock();
+		try {
+			CompletableFuture<State> future = new CompletableFuture<>();
+			enqueue(STATUS_REQUEST, new Transaction(ModbusRtu.READ_HOLDING_REGISTERS, 11) {
+				@Override
+				void complete(byte[] response) {
+					future.complete(new State(response));
+				}
+				@Override
+				void fail(Exception e) {
+					future.completeExceptionally(e);
+				}
+			});
+			return future;
+		} finally {
+			lock.unlock();
+			scheduler.release();
+		}
+	}
+
+	private void enqueue(byte[] data, Transaction transaction) throws Exception {
+		if (!isConnected()) {
+			throw new IllegalStateException("Not connected");
+		}
+		transport.write(data, 0, data.length);
+		pipeline.add(transaction);
+		if (pipeline.size() >= pipelineDepth) { // full, send the batch and make room for the next request
+			transport.flush();
+			while (pipeline.size() >= pipelineDepth) {
+				receive();
+			}
+		}
+	}
+
+	/**
+	 * Flush queued frames and wait for all in flight responses.
+	 * @throws Exception
+	 */
+	public void sync() throws Exception {
+		scheduler.acquire(Priority.MOTION);
+		lock.lock();
+		try {
+			if (!pipeline.isEmpty()) {
+				transport.flush();
+				while (!pipeline.isEmpty()) {
+					receive();
+				}
+			}
+		} finally {
+			lock.unlock();
+			scheduler.release();
+		}
+	}
+
+	private void receive() throws Exception {
+		// responses arrive in request order
+		Transaction transaction = pipeline.poll();
+		byte[] response = new byte[transaction.length];
+		try {
+			parser.readFrame(DEFAULT_SLAVE_ID, transaction.function, response);
+		} catch (ModbusException e) {
+			transaction.fail(e); // stream still aligned
+			return;
+		} catch (Exception e) {
+			transaction.fail(e);
+			fail(e);
+			if (metrics != null && e instanceof InterruptedIOException) {
+				metrics.timeout();
+			}
+			if (e instanceof IOException) {
+				lost((IOException) e);
+			}
+			throw e;
+		}
+		transaction.complete(response);
+	}
+
+	private void fail(Exception e) {
+		Transaction transaction;
+		while ((transaction = pipeline.poll()) != null) {
+			transaction.fail(e);
+		}
+	}
+
+	public void readBytes(byte[] data) throws Exception {
+		readBytes(data, 0, data.length);
+	}
+
+	public void readBytes(byte[] data, int offset, int len) throws Exception {
+		scheduler.acquire(Priority.DIAGNOSTICS);
+		lock.lock();
+		try {
+			parser.readBytes(data, offset, len);
+		} finally {
+			lock.unlock();
+			scheduler.release();
+		}
+	}
+
+	public GripperMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Record latencies and errors of this gripper in the given metrics.
+	 * @param metrics null to disable
+	 */
+	public void setMetrics(GripperMetrics metrics) {
+		lock.lock();
+		try {
+			this.metrics = metrics;
+			parser.setMetrics(metrics);
+			defaultMetrics = false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getPipelineDepth() {
+		return pipelineDepth;
+	}
+
+	/**
+	 * Set the maximum number of requests in flight on the transport. Only a
+	 * full-duplex transport (TCP) accepts more than one.
+	 * @param pipelineDepth 1 disables pipelining
+	 */
+	public void setPipelineDepth(int pipelineDepth) {
+		if (pipelineDepth < 1) {
+			throw new IllegalArgumentException("Invalid pipeline depth: " + pipelineDepth);
+		}
+		if (pipelineDepth > 1 && !transport.isFullDuplex()) {
+			throw new IllegalArgumentException("Pipelining requires a full-duplex transport: " + transport.getName());
+		}
+		lock.lock();
+		try {
+			this.pipelineDepth = pipelineDepth;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean isWarmAttach() {
+		return warmAttach;
+	}
+
+	/**
+	 * Reuse an already activated gripper on connect instead of running the
+	 * deactivate/activate cycle, which releases the held object.
+	 * @param warmAttach
+	 */
+	public void setWarmAttach(boolean warmAttach) {
+		this.warmAttach = warmAttach;
+	}
+
+	public long getReadyTimeout() {
+		return readyTimeout;
+	}
+
+	/**
+	 * Set the maximum time to wait for the first status response after opening the transport.
+	 * @param readyTimeout in milliseconds
+	 */
+	public void setReadyTimeout(long readyTimeout) {
+		this.readyTimeout = readyTimeout;
+	}
+
+	public long getActivationTimeout() {
+		return activationTimeout;
+	}
+
+	/**
+	 * Set the maximum time to wait for gSTA == 0x03 after an activation request.
+	 * @param activationTimeout in milliseconds
+	 */
+	public void setActivationTimeout(long activationTimeout) {
+		this.activationTimeout = activationTimeout;
+	}
+
+	public Transport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Returns the scheduler that orders the transactions of this gripper, with
+	 * the queue depth and wait time of every priority class.
+	 * @return
+	 */
+	public TransactionScheduler getScheduler() {
+		return scheduler;
+	}
+
+	private static abstract class Transaction {
+
+		final int function;
+		final int length; // expected response length
+
+		Transaction(int function, int length) {
+			this.function = function;
+			this.length = length;
+		}
+
+		abstract void complete(byte[] response);
+
+		abstract void fail(Exception e);
+
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,463 @@
+package com.delmesoft.gripper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.delmesoft.gripper.utils.ModbusException;
+import com.delmesoft.gripper.utils.ModbusRtu;
+import com.delmesoft.gripper.utils.ModbusRtuParser;
+import com.delmesoft.gripper.utils.SyncSerialPort;
+
+/**
+ * Multi-drop RS-485 bus shared by several grippers. A single bus thread owns
+ * the serial port and schedules the transactions of every slave: motion
+ * commands go first, up to {@link #getMotionSlots()} in a row, then the status
+ * reads. Each slave has its own motion and status queues, served round-robin,
+ * so a chatty slave cannot take the turns of the others. An optional sweep
+ * polls the status of every slave while the bus is idle.
+ */
+public class ModbusRtuBus {
+
+	private final String port;
+	private int baudRate;
+
+	private final SyncSerialPort serialPort;
+	private final ModbusRtuParser parser;
+
+	private final List<SlaveGripper> slaves = new ArrayList<>();
+
+	private int motionSlots = 4;
+	private long sweepPeriod; // ms, 0 -> disabled
+
+	private Thread thread;
+	private volatile boolean running;
+
+	private int motionRoundRobin;
+	private int statusRoundRobin;
+	private int sweepIndex;
+	private long nextSweep;
+
+	public ModbusRtuBus(String port) {
+		this(port, 115200);
+	}
+
+	public ModbusRtuBus(String port, int baudRate) {
+		this.port = port;
+		this.baudRate = baudRate;
+		this.serialPort = new SyncSerialPort();
+		this.serialPort.setAdaptiveTimeout(true);
+		this.parser = new ModbusRtuParser(serialPort);
+	}
+
+	/**
+	 * Open the serial port and start the bus thread.
+	 * @throws Exception
+	 */
+	public synchronized void connect() throws Exception {
+		if (!isConnected()) {
+			serialPort.setPort(port);
+			serialPort.setBaudRate(baudRate);
+			serialPort.setTimeout(serialPort.getWorstCaseTimeout());
+			serialPort.connect();
+			running = true;
+			thread = new Thread(this::run, "ModbusRtuBus-" + port);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	public synchronized boolean isConnected() {
+		return running && serialPort.isConnected();
+	}
+
+	/**
+	 * Stop the bus thread and close the serial port. Pending transactions fail.
+	 */
+	public synchronized void disconnect() {
+		if (thread != null) {
+			synchronized (slaves) {
+				running = false;
+				slaves.notifyAll();
+			}
+			if (Thread.currentThread() != thread) { // not from a completion on the bus thread
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			thread = null;
+			terminate(new IllegalStateException("Bus disconnected"));
+		}
+	}
+
+	private void terminate(Exception cause) {
+		serialPort.disconnect();
+		synchronized (slaves) {
+			running = false;
+			for (SlaveGripper slave : slaves) {
+				fail(slave.motionQueue, cause);
+				fail(slave.statusQueue, cause);
+			}
+		}
+	}
+
+	/**
+	 * Returns the handle of the gripper at the given slave address.
+	 * @param slaveId Modbus slave ID
+	 * @return Gripper handle sharing this bus
+	 */
+	public AsyncGripper getGripper(int slaveId) {
+		synchronized (slaves) {
+			for (SlaveGripper slave : slaves) {
+				if (slave.slaveId == slaveId) {
+					return slave;
+				}
+			}
+			SlaveGripper slave = new SlaveGripper(slaveId);
+			slaves.add(slave);
+			return slave;
+		}
+	}
+
+	private CompletableFuture<byte[]> submit(SlaveGripper slave, byte[] frame, int length, boolean motion) {
+		Transaction transaction = new Transaction(slave, frame, length);
+		synchronized (slaves) {
+			if (!running) {
+				transaction.future.completeExceptionally(new IllegalStateException("Not connected"));
+			} else {
+				(motion ? slave.motionQueue : slave.statusQueue).add(transaction);
+				slaves.notifyAll();
+			}
+		}
+		return transaction.future;
+	}
+
+	private void run() {
+		int motionCount = 0;
+		while (running) {
+			Transaction transaction = null;
+			try {
+				synchronized (slaves) {
+					while (running && transaction == null) {
+						if (motionCount < motionSlots && (transaction = nextMotion()) != null) {
+							motionCount++;
+						} else if ((transaction = nextStatus()) != null) {
+							motionCount = 0;
+						} else if (motionCount >= motionSlots) {
+							motionCount = 0; // no status pending, new motion cycle
+						} else if ((transaction = nextSweep()) == null) {
+							long wait = sweepPeriod > 0 && !slaves.isEmpty() ? Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextSweep - System.nanoTime())) : 0;
+							slaves.wait(wait);
+						}
+					}
+				}
+				if (transaction != null) {
+					execute(transaction);
+				}
+			} catch (InterruptedException e) {
+				terminate(new IllegalStateException("Bus thread interrupted"));
+				break;
+			}
+		}
+	}
+
+	private Transaction nextMotion() {
+		int n = slaves.size();
+		for (int i = 0; i < n; i++) {
+			SlaveGripper slave = slaves.get((motionRoundRobin + i) % n);
+			Transaction transaction = slave.motionQueue.poll();
+			if (transaction != null) {
+				motionRoundRobin = (motionRoundRobin + i + 1) % n;
+				return transaction;
+			}
+		}
+		return null;
+	}
+
+	private Transaction nextStatus() {
+		int n = slaves.size();
+		for (int i = 0; i < n; i++) {
+			SlaveGripper slave = slaves.get((statusRoundRobin + i) % n);
+			Transaction transaction = slave.statusQueue.poll();
+			if (transaction != null) {
+				statusRoundRobin = (statusRoundRobin + i + 1) % n;
+				return transaction;
+			}
+		}
+		return null;
+	}
+
+	private Transaction nextSweep() {
+		if (sweepPeriod <= 0 || slaves.isEmpty() || System.nanoTime() - nextSweep < 0) {
+			return null;
+		}
+		SlaveGripper slave = slaves.get(sweepIndex);
+		sweepIndex = (sweepIndex + 1) % slaves.size();
+		if (sweepIndex == 0) {
+			nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sweepPeriod);
+		}
+		Transaction transaction = new Transaction(slave, slave.statusRequest, 11);
+		transaction.future.thenAccept(data -> slave.latestState = new State(data));
+		return transaction;
+	}
+
+	private void execute(Transaction transaction) {
+		try {
+			parser.clear(); // discard late bytes so the next response starts aligned
+			serialPort.writeBytes(transaction.frame);
+			byte[] response = new byte[transaction.length];
+			parser.readFrame(transaction.frame[0], transaction.frame[1], response);
+			transaction.future.complete(response);
+		} catch (ModbusException e) {
+			transaction.future.completeExceptionally(e);
+		} catch (Exception e) {
+			transaction.future.completeExceptionally(new RuntimeException("Invalid response from slave " + (transaction.frame[0] & 0xFF), e));
+		}
+	}
+
+	private static void fail(ArrayDeque<Transaction> queue, Exception cause) {
+		Transaction transaction;
+		while ((transaction = queue.poll()) != null) {
+			transaction.future.completeExceptionally(cause);
+		}
+	}
+
+	private static <T> T await(CompletableFuture<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}
+
+	public String getPort() {
+		return port;
+	}
+
+	public int getBaudRate() {
+		return baudRate;
+	}
+
+	public SyncSerialPort getSerialPort() {
+		return serialPort;
+	}
+
+	public int getMotionSlots() {
+		return motionSlots;
+	}
+
+	/**
+	 * Set the number of consecutive motion commands served before a pending
+	 * status read gets the bus.
+	 * @param motionSlots
+	 */
+	public void setMotionSlots(int motionSlots) {
+		this.motionSlots = Math.max(1, motionSlots);
+	}
+
+	public long getSweepPeriod() {
+		return sweepPeriod;
+	}
+
+	/**
+	 * Set the period of the background status sweep over all slaves.
+	 * @param sweepPeriod in milliseconds, 0 disables the sweep
+	 */
+	public void setSweepPeriod(long sweepPeriod) {
+		synchronized (slaves) {
+			this.sweepPeriod = sweepPeriod;
+			this.nextSweep = System.nanoTime();
+			slaves.notifyAll();
+		}
+	}
+
+	private static class Transaction {
+
+		final SlaveGripper slave;
+		final byte[] frame;
+		final int length; // expected response length
+		final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+		Transaction(SlaveGripper slave, byte[] frame, int length) {
+			this.slave = slave;
+			this.frame = frame;
+			this.length = length;
+		}
+
+	}
+
+	/**
+	 * Gripper handle bound to one slave of the bus.
+	 */
+	public class SlaveGripper implements AsyncGripper {
+
+		private final int slaveId;
+		private final byte[] statusRequest;
+		private final byte[] activationRequest;
+		private final byte[] responseAck;
+		private final ArrayDeque<Transaction> motionQueue = new ArrayDeque<>();
+		private final ArrayDeque<Transaction> statusQueue = new ArrayDeque<>();
+
+		private volatile boolean connected;
+		private volatile State latestState;
+		private volatile boolean warmAttach;
+		private volatile long activationTimeout = Activation.DEFAULT_TIMEOUT; // ms
+
+		private SlaveGripper(int slaveId) {
+			this.slaveId = slaveId;
+			this.statusRequest = ModbusRtu.readHoldingRegisters(slaveId, STATUS_REGISTER, 3);
+			this.activationRequest = ModbusRtu.readHoldingRegisters(slaveId, STATUS_REGISTER, 1);
+			this.responseAck = ModbusRtu.writeMultipleRegistersResponse(slaveId, ACTION_REQUEST_REGISTER, 3);
+		}
+
+		@Override
+		public synchronized void connect() throws Exception {
+			if (!isConnected()) {
+				if (!ModbusRtuBus.this.isConnected()) {
+					throw new IllegalStateException("Bus not connected");
+				}
+				if (warmAttach && Activation.isAttachable(getState())) {
+					awaitActivation(); // already active or activating, keep the grip
+				} else {
+					restart();
+				}
+				connected = true;
+			}
+		}
+
+		public synchronized void restart() throws Exception {
+
+			write(0x00, 0x00, 0x00, 0x00, "Deactivate error"); // deactivate
+			write(0x01, 0x00, 0x00, 0x00, "Activate error"); // activate
+			awaitActivation();
+
+		}
+
+		private void awaitActivation() throws Exception {
+			// the bus thread serves the other slaves while this one backs off
+			Activation.await(() -> Activation.gripperStatus(await(submit(this, activationRequest, 7, false))), activationTimeout);
+		}
+
+		private void write(int action, int position, int speed, int force, String error) throws Exception {
+			byte[] frame = ModbusRtu.writeMultipleRegisters(slaveId, ACTION_REQUEST_REGISTER, (byte) action, (byte) 0x00, (byte) 0x00, (byte) position, (byte) speed, (byte) force);
+			if (!Arrays.equals(await(submit(this, frame, 8, true)), responseAck)) {
+				throw new RuntimeException(error);
+			}
+		}
+
+		@Override
+		public boolean isConnected() {
+			return connected && ModbusRtuBus.this.isConnected();
+		}
+
+		/**
+		 * Release the handle, the bus stays open.
+		 */
+		@Override
+		public void disconnect() {
+			connected = false;
+		}
+
+		@Override
+		public void pose(double position, double speed, double force) throws Exception {
+			await(poseAsync(position, speed, force));
+		}
+
+		@Override
+		public void pose(byte position, byte speed, byte force) throws Exception {
+			await(poseAsync(position, speed, force));
+		}
+
+		@Override
+		public State getState() throws Exception {
+			return await(getStateAsync());
+		}
+
+		@Override
+		public CompletableFuture<Void> poseAsync(double position, double speed, double force) {
+			final byte p = (byte) (255.0 * position);
+			final byte s = (byte) (255.0 * speed);
+			final byte f = (byte) (255.0 * force);
+			return poseAsync(p, s, f);
+		}
+
+		@Override
+		public CompletableFuture<Void> poseAsync(byte position, byte speed, byte force) {
+			// 09 00 00 position speed force
+			byte[] frame = ModbusRtu.writeMultipleRegisters(slaveId, ACTION_REQUEST_REGISTER, (byte) 0x09, (byte) 0x00, (byte) 0x00, position, speed, force);
+			return submit(this, frame, 8, true).thenAccept(response -> {
+				if (!Arrays.equals(response, responseAck)) {
+					throw new RuntimeException("Send data error");
+				}
+			});
+		}
+
+		@Override
+		public CompletableFuture<State> getStateAsync() {
+			return submit(this, statusRequest, 11, false).thenApply(data -> latestState = new State(data));
+		}
+
+		@Override
+		public State poseAndGetState(byte position, byte speed, byte force) throws Exception {
+			byte[] frame = ModbusRtu.readWriteMultipleRegisters(slaveId, STATUS_REGISTER, 3, ACTION_REQUEST_REGISTER, (byte) 0x09, (byte) 0x00, (byte) 0x00, position, speed, force);
+			byte[] response = await(submit(this, frame, 11, true));
+			if (response[1] != ModbusRtu.READ_WRITE_MULTIPLE_REGISTERS) {
+				throw new RuntimeException("Send data error");
+			}
+			return latestState = new State(response);
+		}
+
+		/**
+		 * Returns the last State read from this slave, by a status read or by the bus sweep.
+		 * @return last State or null if the slave has not been read yet
+		 */
+		public State getLatestState() {
+			return latestState;
+		}
+
+		public boolean isWarmAttach() {
+			return warmAttach;
+		}
+
+		/**
+		 * Reuse an already activated gripper on connect instead of running the
+		 * deactivate/activate cycle, which releases the held object.
+		 * @param warmAttach
+		 */
+		public void setWarmAttach(boolean warmAttach) {
+			this.warmAttach = warmAttach;
+		}
+
+		public long getActivationTimeout() {
+			return activationTimeout;
+		}
+
+		/**
+		 * Set the maximum time to wait for gSTA == 0x03 after an activation request.
+		 * @param activationTimeout in milliseconds
+		 */
+		public void setActivationTimeout(long activationTimeout) {
+			this.activationTimeout = activationTimeout;
+		}
+
+		public int getSlaveId() {
+			return slaveId;
+		}
+
+		public ModbusRtuBus getBus() {
+			return ModbusRtuBus.this;
+		}
+
+	}
+
+}
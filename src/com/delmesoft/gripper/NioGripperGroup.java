@@ -0,0 +1,132 @@
+package com.delmesoft.gripper;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.delmesoft.gripper.utils.TimerWheel;
+
+/**
+ * Event loop that serves many {@link NioTcpGripper} connections from a single
+ * thread. Response timeouts are driven by a timer wheel.
+ * <p>
+ * When the loop stops, on shutdown or on a selector failure, every connection
+ * is closed and the tasks still queued are run afterwards, so the pending
+ * futures fail instead of waiting forever.
+ */
+public class NioGripperGroup {
+
+	private final Selector selector;
+	private final TimerWheel timerWheel;
+	private final ConcurrentLinkedQueue<Runnable> tasks;
+
+	private final Thread thread;
+	private volatile boolean running;
+
+	public NioGripperGroup() throws IOException {
+		this(10);
+	}
+
+	/**
+	 * @param resolution timer resolution in milliseconds
+	 * @throws IOException
+	 */
+	public NioGripperGroup(long resolution) throws IOException {
+		selector = Selector.open();
+		timerWheel = new TimerWheel(resolution, TimeUnit.MILLISECONDS, 512);
+		tasks = new ConcurrentLinkedQueue<>();
+		running = true;
+		thread = new Thread(this::run, "NioGripperGroup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void run() {
+		Exception cause = new IllegalStateException("Group is shut down");
+		try {
+			while (running) {
+				long wait = TimeUnit.NANOSECONDS.toMillis(timerWheel.nextTickDelay(System.nanoTime()));
+				selector.select(Math.max(1, wait));
+				Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+				while (iterator.hasNext()) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					((NioTcpGripper) key.attachment()).handle(key); // errors close the connection
+				}
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					task.run();
+				}
+				timerWheel.advance(System.nanoTime());
+			}
+		} catch (Exception e) { // the loop cannot go on
+			cause = e;
+		} finally {
+			running = false;
+			terminate(cause);
+		}
+	}
+
+	private void terminate(Exception cause) {
+		for (SelectionKey key : selector.keys()) {
+			((NioTcpGripper) key.attachment()).close(cause);
+		}
+		try {
+			selector.close();
+		} catch (IOException ignore) {
+		}
+		// requests find their connection closed, connects the selector closed
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			try {
+				task.run();
+			} catch (RuntimeException ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Run a task on the event loop thread.
+	 * @param task
+	 * @throws IllegalStateException if the group is shut down
+	 */
+	public void execute(Runnable task) {
+		if (!running) {
+			throw new IllegalStateException("Group is shut down");
+		}
+		tasks.add(task);
+		if (!running && tasks.remove(task)) { // missed the final drain
+			throw new IllegalStateException("Group is shut down");
+		}
+		selector.wakeup();
+	}
+
+	public boolean inEventLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Stop the event loop. Open connections are closed and their pending
+	 * requests fail.
+	 */
+	public void shutdown() {
+		running = false;
+		selector.wakeup();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	Selector selector() {
+		return selector;
+	}
+
+	TimerWheel timerWheel() {
+		return timerWheel;
+	}
+
+}
@@ -0,0 +1,472 @@
+package com.delmesoft.gripper;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.delmesoft.gripper.utils.CRC16;
+import com.delmesoft.gripper.utils.ModbusException;
+import com.delmesoft.gripper.utils.ModbusRtu;
+import com.delmesoft.gripper.utils.ModbusRtuParser;
+import com.delmesoft.gripper.utils.TimerWheel;
+
+/**
+ * Non-blocking TCP Gripper served by a {@link NioGripperGroup}. Requests are
+ * queued per connection and sent one at a time. Responses are framed and CRC
+ * checked by a {@link ModbusRtuParser}, an exception response fails its
+ * request with a ModbusException and the connection stays open.
+ * <p>
+ * Blocking calls are refused on the event loop thread, except disconnect()
+ * which closes the connection there without waiting.
+ */
+public class NioTcpGripper implements AsyncGripper {
+
+	private static final int TIMEOUT = 10_000;
+
+	private static final byte[] STATUS_REQUEST = { 0x09, 0x03, 0x07, (byte) 0xD0, 0x00, 0x03, 0x04, 0x0E }; // 09 03 07 D0 00 03 04 0E
+	private static final byte[] ACTIVATION_REQUEST = { 0x09, 0x03, 0x07, (byte) 0xD0, 0x00, 0x01, (byte) 0x85, (byte) 0xCF };
+	private static final byte[] DEACTIVATE = { 0x09, 0x10, 0x03, (byte) 0xE8, 0x00, 0x03, 0x06, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x73, 0x30 };
+	private static final byte[] ACTIVATE = { 0x09, 0x10, 0x03, (byte) 0xE8, 0x00, 0x03, 0x06, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x72, (byte) 0xE1 };
+
+	private final NioGripperGroup group;
+	private final ReentrantLock lock = new ReentrantLock(); // serializes connect, restart and disconnect
+
+	private String host;
+	private int port;
+	private int timeout; // ms
+	private volatile boolean warmAttach;
+	private volatile long activationTimeout = Activation.DEFAULT_TIMEOUT; // ms
+
+	private volatile boolean connected;
+
+	// event loop state
+	private SocketChannel channel;
+	private SelectionKey key;
+	private CompletableFuture<Void> connectFuture;
+	private TimerWheel.Timeout connectTimeout;
+	private final ArrayDeque<Request> queue = new ArrayDeque<>();
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(256);
+	private final ModbusRtuParser parser = new ModbusRtuParser(new ModbusRtuParser.Source() {
+		@Override
+		public int read(byte[] data, int offset, int len) {
+			readBuffer.flip();
+			int n = Math.min(len, readBuffer.remaining());
+			readBuffer.get(data, offset, n);
+			readBuffer.compact();
+			return n;
+		}
+		@Override
+		public int available() {
+			return readBuffer.position();
+		}
+	});
+	private Request current;
+
+	public NioTcpGripper(NioGripperGroup group, String host) {
+		this(group, host, 21098);
+	}
+
+	public NioTcpGripper(NioGripperGroup group, String host, int port) {
+		this.group = group;
+		this.host = host;
+		this.port = port;
+		this.timeout = TIMEOUT;
+	}
+
+	@Override
+	public void connect() throws Exception {
+		checkBlocking();
+		lock.lock();
+		try {
+			if (!isConnected()) {
+				CompletableFuture<Void> future = new CompletableFuture<>();
+				group.execute(() -> open(future));
+				await(future);
+				try {
+					if (warmAttach && Activation.isAttachable(getState())) {
+						awaitActivation(); // already active or activating, keep the grip
+					} else {
+						restart();
+					}
+				} catch (Exception e) {
+					disconnect();
+					throw e;
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void restart() throws Exception {
+		checkBlocking();
+		lock.lock();
+		try {
+			if (!Arrays.equals(await(transact(DEACTIVATE, 8)), RESPONSE_ACK)) {
+				throw new RuntimeException("Deactivate error");
+			}
+			if (!Arrays.equals(await(transact(ACTIVATE, 8)), RESPONSE_ACK)) {
+				throw new RuntimeException("Activate error");
+			}
+			awaitActivation();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void awaitActivation() throws Exception {
+		Activation.await(() -> Activation.gripperStatus(await(transact(ACTIVATION_REQUEST, 7))), activationTimeout);
+	}
+
+	@Override
+	public boolean isConnected() {
+		return connected;
+	}
+
+	@Override
+	public void disconnect() {
+		if (group.inEventLoop()) { // i.e. from a listener, a connect in progress must not be awaited here
+			close(new EOFException("Disconnected"));
+			return;
+		}
+		lock.lock();
+		try {
+			if (isConnected()) {
+				CompletableFuture<Void> future = new CompletableFuture<>();
+				group.execute(() -> {
+					close(new EOFException("Disconnected"));
+					future.complete(null);
+				});
+				try {
+					await(future);
+				} catch (Exception ignore) {
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void pose(double position, double speed, double force) throws Exception {
+		final byte p = (byte) (255.0 * position);
+		final byte s = (byte) (255.0 * speed);
+		final byte f = (byte) (255.0 * force);
+		pose(p, s, f);
+	}
+
+	@Override
+	public void pose(byte position, byte speed, byte force) throws Exception {
+		await(poseAsync(position, speed, force));
+	}
+
+	@Override
+	public State getState() throws Exception {
+		return await(getStateAsync());
+	}
+
+	@Override
+	public CompletableFuture<Void> poseAsync(double position, double speed, double force) {
+		final byte p = (byte) (255.0 * position);
+		final byte s = (byte) (255.0 * speed);
+		final byte f = (byte) (255.0 * force);
+		return poseAsync(p, s, f);
+	}
+
+	@Override
+	public CompletableFuture<Void> poseAsync(byte position, byte speed, byte force) {
+		// 09 10 03 E8 00 03 06 09 00 00
+		byte[] data = { 0x09, 0x10, 0x03, (byte) 0xE8, 0x00, 0x03, 0x06, 0x09, 0x00, 0x00, position, speed, force, 0x00, 0x00 };
+		int crc = CRC16.crc16(data, 0, data.length - 2);
+		data[data.length - 2] = (byte) crc;
+		data[data.length - 1] = (byte) (crc >> 8);
+		return transact(data, 8).thenAccept(response -> {
+			if (!Arrays.equals(response, RESPONSE_ACK)) {
+				throw new RuntimeException("Send data error");
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<State> getStateAsync() {
+		return transact(STATUS_REQUEST, 11).thenApply(State::new);
+	}
+
+	@Override
+	public State poseAndGetState(byte position, byte speed, byte force) throws Exception {
+		// 09 17 07 D0 00 03 03 E8 00 03 06 09 00 00
+		byte[] data = ModbusRtu.readWriteMultipleRegisters(DEFAULT_SLAVE_ID, STATUS_REGISTER, 3, ACTION_REQUEST_REGISTER, (byte) 0x09, (byte) 0x00, (byte) 0x00, position, speed, force);
+		return new State(await(transact(data, 11))); // function and CRC checked by the parser
+	}
+
+	/**
+	 * Queue a request on this connection.
+	 * @param frame request frame with CRC
+	 * @param length expected response length
+	 * @return future completed with the response frame
+	 */
+	protected CompletableFuture<byte[]> transact(byte[] frame, int length) {
+		Request request = new Request(ByteBuffer.wrap(frame), frame[1], length);
+		try {
+			group.execute(() -> enqueue(request));
+		} catch (Exception e) {
+			request.future.completeExceptionally(e);
+		}
+		return request.future;
+	}
+
+	// ---- event loop ----
+
+	private void open(CompletableFuture<Void> future) {
+		connectFuture = future; // failed by close() if any step throws
+		try {
+			if (!group.isRunning()) {
+				throw new IllegalStateException("Group is shut down");
+			}
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			key = channel.register(group.selector(), 0, this);
+			if (channel.connect(new InetSocketAddress(host, port))) {
+				connected();
+			} else {
+				key.interestOps(SelectionKey.OP_CONNECT);
+				connectTimeout = group.timerWheel().schedule(timeout, TimeUnit.MILLISECONDS, () -> close(new TimeoutException("Connect timeout")));
+			}
+		} catch (Exception e) {
+			close(e);
+		}
+	}
+
+	private void connected() {
+		if (connectTimeout != null) {
+			connectTimeout.cancel();
+			connectTimeout = null;
+		}
+		key.interestOps(SelectionKey.OP_READ);
+		connected = true;
+		connectFuture.complete(null);
+		connectFuture = null;
+	}
+
+	void handle(SelectionKey key) {
+		try {
+			if (!key.isValid()) {
+				return;
+			}
+			if (key.isConnectable() && channel.finishConnect()) {
+				connected();
+			}
+			if (key.isValid() && key.isWritable()) {
+				write();
+			}
+			if (key.isValid() && key.isReadable()) {
+				read();
+			}
+		} catch (Exception e) {
+			close(e);
+		}
+	}
+
+	private void enqueue(Request request) {
+		if (channel == null || !connected) {
+			request.future.completeExceptionally(new IllegalStateException("Not connected"));
+			return;
+		}
+		queue.add(request);
+		if (current == null) {
+			next();
+		}
+	}
+
+	private void next() {
+		current = queue.poll();
+		if (current != null) {
+			try {
+				parser.clear(); // drop late bytes of previous requests
+			} catch (IOException ignore) { // not thrown by the buffer source
+			}
+			current.timeout = group.timerWheel().schedule(timeout, TimeUnit.MILLISECONDS, () -> close(new TimeoutException("Response timeout")));
+			try {
+				write();
+			} catch (IOException e) {
+				close(e);
+			}
+		}
+	}
+
+	private void write() throws IOException {
+		if (current != null) {
+			channel.write(current.frame);
+			if (current.frame.hasRemaining()) {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			} else {
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+	}
+
+	private void read() throws IOException {
+		int n = channel.read(readBuffer);
+		if (n < 0) {
+			throw new EOFException();
+		}
+		if (current == null) {
+			readBuffer.clear(); // unsolicited data
+			return;
+		}
+		byte[] response = new byte[current.length];
+		int length;
+		try {
+			length = parser.pollFrame(DEFAULT_SLAVE_ID, current.function, response);
+		} catch (ModbusException e) { // exception response, the stream is still aligned
+			finish().future.completeExceptionally(e);
+			next();
+			return;
+		}
+		if (length < 0) {
+			return; // incomplete frame
+		}
+		finish().future.complete(length == response.length ? response : Arrays.copyOf(response, length));
+		next();
+	}
+
+	private Request finish() {
+		Request request = current;
+		current = null;
+		request.timeout.cancel();
+		return request;
+	}
+
+	void close(Exception cause) {
+		connected = false;
+		if (connectTimeout != null) {
+			connectTimeout.cancel();
+			connectTimeout = null;
+		}
+		if (channel != null) {
+			try {
+				channel.close(); // also cancels the key
+			} catch (IOException ignore) {
+			}
+			channel = null;
+			key = null;
+		}
+		if (connectFuture != null) {
+			connectFuture.completeExceptionally(cause);
+			connectFuture = null;
+		}
+		if (current != null) {
+			current.timeout.cancel();
+			current.future.completeExceptionally(cause);
+			current = null;
+		}
+		Request request;
+		while ((request = queue.poll()) != null) {
+			request.future.completeExceptionally(cause);
+		}
+	}
+
+	private void checkBlocking() {
+		if (group.inEventLoop()) {
+			throw new IllegalStateException("Blocking call on the event loop thread");
+		}
+	}
+
+	private <T> T await(CompletableFuture<T> future) throws Exception {
+		checkBlocking();
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Set connect and response timeout.
+	 * @param timeout in milliseconds
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	public boolean isWarmAttach() {
+		return warmAttach;
+	}
+
+	/**
+	 * Reuse an already activated gripper on connect instead of running the
+	 * deactivate/activate cycle, which releases the held object.
+	 * @param warmAttach
+	 */
+	public void setWarmAttach(boolean warmAttach) {
+		this.warmAttach = warmAttach;
+	}
+
+	public long getActivationTimeout() {
+		return activationTimeout;
+	}
+
+	/**
+	 * Set the maximum time to wait for gSTA == 0x03 after an activation request.
+	 * @param activationTimeout in milliseconds
+	 */
+	public void setActivationTimeout(long activationTimeout) {
+		this.activationTimeout = activationTimeout;
+	}
+
+	public NioGripperGroup getGroup() {
+		return group;
+	}
+
+	private static class Request {
+
+		final ByteBuffer frame;
+		final int function;
+		final int length; // expected response length
+		final CompletableFuture<byte[]> future = new CompletableFuture<>();
+		TimerWheel.Timeout timeout;
+
+		Request(ByteBuffer frame, int function, int length) {
+			this.frame = frame;
+			this.function = function;
+			this.length = length;
+		}
+
+	}
+
+}
@@ -0,0 +1,181 @@
+package com.delmesoft.gripper;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends pose setpoints on a dedicated thread, last writer wins. A setpoint
+ * submitted while another one is still unsent replaces it, so when the link
+ * frees up only the newest setpoint goes out and stale ones are never sent.
+ * <p>
+ * Every submission returns a future that follows the setpoint actually sent:
+ * callers whose setpoint was superseded get the outcome of the one that
+ * replaced it. Each caller gets its own dependent future, completing or
+ * cancelling it does not affect the other callers. Futures are completed on
+ * the sender thread, dependent stages must not block.
+ */
+public class PoseCoalescer implements AutoCloseable {
+
+	private final Gripper gripper;
+	private final Thread thread;
+
+	// pending setpoint, guarded by this
+	private byte position;
+	private byte speed;
+	private byte force;
+	private CompletableFuture<Void> pending;
+	private boolean running = true;
+
+	private long submitted;
+	private long coalesced;
+	private long sent;
+	private long failed;
+
+	public PoseCoalescer(Gripper gripper) {
+		this.gripper = gripper;
+		this.thread = new Thread(this::run, "PoseCoalescer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Queue a setpoint, replacing the unsent one if any.
+	 * @param position 0 -> open, 1 -> close
+	 * @param speed
+	 * @param force
+	 * @return future completed when this setpoint or one that superseded it is acknowledged
+	 */
+	public CompletableFuture<Void> submit(double position, double speed, double force) {
+		final byte p = (byte) (255.0 * position);
+		final byte s = (byte) (255.0 * speed);
+		final byte f = (byte) (255.0 * force);
+		return submit(p, s, f);
+	}
+
+	/**
+	 * Queue a setpoint, replacing the unsent one if any.
+	 * @param position 0 -> open, 255 -> close
+	 * @param speed
+	 * @param force
+	 * @return future completed when this setpoint or one that superseded it is acknowledged
+	 */
+	public synchronized CompletableFuture<Void> submit(byte position, byte speed, byte force) {
+		if (!running) {
+			CompletableFuture<Void> future = new CompletableFuture<>();
+			future.completeExceptionally(new IllegalStateException("Coalescer is closed"));
+			return future;
+		}
+		submitted++;
+		this.position = position;
+		this.speed = speed;
+		this.force = force;
+		if (pending == null) {
+			pending = new CompletableFuture<>();
+			notifyAll();
+		} else {
+			coalesced++;
+		}
+		return pending.thenApply(v -> v); // private to the caller
+	}
+
+	private void run() {
+		while (true) {
+			final byte p, s, f;
+			final CompletableFuture<Void> future;
+			synchronized (this) {
+				while (running && pending == null) {
+					try {
+						wait();
+					} catch (InterruptedException ignore) {
+					}
+				}
+				if (!running) {
+					return;
+				}
+				p = position;
+				s = speed;
+				f = force;
+				future = pending;
+				pending = null;
+			}
+			try {
+				gripper.pose(p, s, f);
+				synchronized (this) {
+					sent++;
+				}
+				future.complete(null);
+			} catch (Exception e) {
+				synchronized (this) {
+					failed++;
+				}
+				future.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Stop the sender thread, the unsent setpoint is failed. A setpoint being
+	 * sent is completed normally. May be called from a dependent stage, on the
+	 * sender thread, which then ends after the current setpoint.
+	 */
+	@Override
+	public void close() {
+		CompletableFuture<Void> future;
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			running = false;
+			future = pending;
+			pending = null;
+			notifyAll();
+		}
+		if (future != null) {
+			future.completeExceptionally(new IllegalStateException("Coalescer is closed"));
+		}
+		if (Thread.currentThread() == thread) {
+			return; // the run loop ends when this stage returns
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of setpoints submitted.
+	 * @return
+	 */
+	public synchronized long getSubmitted() {
+		return submitted;
+	}
+
+	/**
+	 * Returns the number of setpoints replaced before being sent.
+	 * @return
+	 */
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * Returns the number of setpoints acknowledged by the gripper.
+	 * @return
+	 */
+	public synchronized long getSent() {
+		return sent;
+	}
+
+	/**
+	 * Returns the number of setpoints that failed.
+	 * @return
+	 */
+	public synchronized long getFailed() {
+		return failed;
+	}
+
+	public Gripper getGripper() {
+		return gripper;
+	}
+
+}
@@ -0,0 +1,317 @@
+package com.delmesoft.gripper;
+
+import java.util.concurrent.TimeUnit;
+
+import com.delmesoft.gripper.utils.ModbusException;
+
+/**
+ * Gripper decorator that survives link losses. A lost link opens a circuit
+ * breaker: calls fail fast while it is open, and the first call after the
+ * backoff delay reconnects and replays the last commanded pose before going on.
+ * The delay doubles after every failed reconnect.
+ * Use warm attach on the wrapped gripper so a reconnect keeps the held object.
+ * <p>
+ * The wrapped gripper is called outside the monitor of the decorator, which
+ * only guards the breaker state: calls keep their place in the scheduling of
+ * the wrapped gripper, and calls made while another thread reconnects fail
+ * immediately instead of waiting for the reconnect.
+ */
+public class ResilientGripper implements Gripper {
+
+	private final Gripper gripper;
+
+	private long minBackoff = 100; // ms
+	private long maxBackoff = 10_000; // ms
+	private int failureThreshold = 3; // consecutive failures that open the circuit
+
+	private boolean attached; // connect() called by the user
+	private boolean open; // circuit breaker
+	private boolean recovering; // a caller is reconnecting
+	private int failures; // consecutive failures
+	private long backoff;
+	private long nextAttempt;
+	private long outageStart;
+
+	private boolean replay;
+	private byte lastPosition;
+	private byte lastSpeed;
+	private byte lastForce;
+
+	// counters
+	private long outages;
+	private long recoveries;
+	private long failedReconnects;
+	private long rejectedCalls;
+	private long totalDowntime; // ns
+	private long maxDowntime; // ns
+
+	public ResilientGripper(Gripper gripper) {
+		this.gripper = gripper;
+	}
+
+	@Override
+	public void connect() throws Exception {
+		gripper.connect();
+		synchronized (this) {
+			attached = true;
+			open = false;
+			failures = 0;
+		}
+	}
+
+	@Override
+	public boolean isConnected() {
+		return gripper.isConnected();
+	}
+
+	@Override
+	public void disconnect() {
+		synchronized (this) {
+			attached = false;
+			open = false;
+		}
+		gripper.disconnect();
+	}
+
+	@Override
+	public void pose(double position, double speed, double force) throws Exception {
+		final byte p = (byte) (255.0 * position);
+		final byte s = (byte) (255.0 * speed);
+		final byte f = (byte) (255.0 * force);
+		pose(p, s, f);
+	}
+
+	@Override
+	public void pose(byte position, byte speed, byte force) throws Exception {
+		guard(false); // the call itself sends the pose
+		commanded(position, speed, force); // accepted, replayed if the link drops
+		try {
+			gripper.pose(position, speed, force);
+		} catch (Exception e) {
+			throw failed(e);
+		}
+		succeeded();
+	}
+
+	@Override
+	public State poseAndGetState(byte position, byte speed, byte force) throws Exception {
+		guard(false); // the call itself sends the pose
+		commanded(position, speed, force); // accepted, replayed if the link drops
+		State state;
+		try {
+			state = gripper.poseAndGetState(position, speed, force);
+		} catch (Exception e) {
+			throw failed(e);
+		}
+		succeeded();
+		return state;
+	}
+
+	@Override
+	public State getState() throws Exception {
+		guard(true);
+		State state;
+		try {
+			state = gripper.getState();
+		} catch (Exception e) {
+			throw failed(e);
+		}
+		succeeded();
+		return state;
+	}
+
+	@Override
+	public State getState(State state) throws Exception {
+		guard(true);
+		try {
+			gripper.getState(state);
+		} catch (Exception e) {
+			throw failed(e);
+		}
+		succeeded();
+		return state;
+	}
+
+	private synchronized void commanded(byte position, byte speed, byte force) {
+		// replayed on recovery, even if this command never reached the device
+		// (the call then failed), never for a call rejected by the breaker
+		replay = true;
+		lastPosition = position;
+		lastSpeed = speed;
+		lastForce = force;
+	}
+
+	private void guard(boolean replay) throws Exception {
+		final boolean replayPose;
+		final byte position, speed, force;
+		synchronized (this) {
+			if (!attached) {
+				return; // plain pass-through until connect()
+			}
+			if (recovering) {
+				rejectedCalls++;
+				throw new RuntimeException("Gripper reconnecting");
+			}
+			if (!open && !gripper.isConnected()) {
+				trip(); // link lost between calls
+			}
+			if (!open) {
+				return;
+			}
+			long now = System.nanoTime();
+			if (now - nextAttempt < 0) {
+				rejectedCalls++;
+				throw new RuntimeException("Gripper unavailable, retry in " + TimeUnit.NANOSECONDS.toMillis(nextAttempt - now) + " ms");
+			}
+			recovering = true; // this caller reconnects, outside the monitor
+			replayPose = replay && this.replay;
+			position = lastPosition;
+			speed = lastSpeed;
+			force = lastForce;
+		}
+		recover(replayPose, position, speed, force);
+	}
+
+	private void recover(boolean replay, byte position, byte speed, byte force) throws Exception {
+		try {
+			gripper.disconnect();
+			gripper.connect();
+			if (replay) {
+				gripper.pose(position, speed, force);
+			}
+		} catch (Exception e) {
+			gripper.disconnect();
+			synchronized (this) {
+				recovering = false;
+				failedReconnects++;
+				nextAttempt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+				backoff = Math.min(backoff * 2, maxBackoff);
+			}
+			throw e;
+		}
+		boolean detached;
+		synchronized (this) {
+			recovering = false;
+			long downtime = System.nanoTime() - outageStart;
+			totalDowntime += downtime;
+			maxDowntime = Math.max(maxDowntime, downtime);
+			recoveries++;
+			open = false;
+			failures = 0;
+			if (replay && lastPosition == position && lastSpeed == speed && lastForce == force) {
+				this.replay = false; // delivered, unless a newer pose was commanded meanwhile
+			}
+			detached = !attached; // disconnect() called during the reconnect
+		}
+		if (detached) {
+			gripper.disconnect();
+		}
+	}
+
+	private Exception failed(Exception e) {
+		boolean tripped = false;
+		synchronized (this) {
+			if (attached && !open && !(e instanceof ModbusException)) { // the device answered an exception response, the link is fine
+				if (++failures >= failureThreshold || !gripper.isConnected()) {
+					trip();
+					tripped = true;
+				}
+			}
+		}
+		if (tripped) {
+			gripper.disconnect();
+		}
+		return e;
+	}
+
+	private synchronized void succeeded() {
+		failures = 0;
+	}
+
+	private void trip() {
+		open = true;
+		outages++;
+		outageStart = System.nanoTime();
+		backoff = minBackoff;
+		nextAttempt = outageStart; // first reconnect on the next call
+	}
+
+	/**
+	 * Set the reconnect backoff bounds, the delay doubles after every failed reconnect.
+	 * @param minBackoff in milliseconds
+	 * @param maxBackoff in milliseconds
+	 */
+	public synchronized void setBackoff(long minBackoff, long maxBackoff) {
+		this.minBackoff = minBackoff;
+		this.maxBackoff = maxBackoff;
+	}
+
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	/**
+	 * Set the number of consecutive failures that opens the circuit while the link looks up.
+	 * @param failureThreshold
+	 */
+	public synchronized void setFailureThreshold(int failureThreshold) {
+		this.failureThreshold = failureThreshold;
+	}
+
+	/**
+	 * Check if the circuit breaker is open, i.e. the gripper is being recovered.
+	 * @return true while calls fail fast
+	 */
+	public synchronized boolean isOpen() {
+		return open;
+	}
+
+	public synchronized long getOutages() {
+		return outages;
+	}
+
+	public synchronized long getRecoveries() {
+		return recoveries;
+	}
+
+	public synchronized long getFailedReconnects() {
+		return failedReconnects;
+	}
+
+	/**
+	 * Returns the number of calls rejected while the circuit was open.
+	 * @return
+	 */
+	public synchronized long getRejectedCalls() {
+		return rejectedCalls;
+	}
+
+	/**
+	 * Returns the accumulated time between link loss and recovery.
+	 * @return downtime in milliseconds
+	 */
+	public synchronized long getTotalDowntime() {
+		return TimeUnit.NANOSECONDS.toMillis(totalDowntime);
+	}
+
+	/**
+	 * Returns the longest outage.
+	 * @return downtime in milliseconds
+	 */
+	public synchronized long getMaxDowntime() {
+		return TimeUnit.NANOSECONDS.toMillis(maxDowntime);
+	}
+
+	/**
+	 * Mean time to recovery.
+	 * @return average downtime in milliseconds, 0 without recoveries
+	 */
+	public synchronized double getMeanTimeToRecovery() {
+		return recoveries == 0 ? 0.0 : totalDowntime / 1e6 / recoveries;
+	}
+
+	public Gripper getGripper() {
+		return gripper;
+	}
+
+}
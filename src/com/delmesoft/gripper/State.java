@@ -2,11 +2,17 @@ package com.delmesoft.gripper;
 public class State {
 	
 	private byte[] data;
+	private long timestamp;
 	
 	public State() {}
 	
 	public State(byte[] data) {
+		this(data, System.nanoTime());
+	}
+	
+	public State(byte[] data, long timestamp) {
 		this.data = data;
+		this.timestamp = timestamp;
 		// System.out.println(Arrays.toString(data));
 	}
 		
@@ -18,6 +24,26 @@ public class State {
 		this.data = data;
 	}
 	
+	/**
+	 * Time at which the state was sampled.
+	 * @return System.nanoTime() of the sample
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+	
+	/**
+	 * Time elapsed since the state was sampled.
+	 * @return age in nanoseconds
+	 */
+	public long getAge() {
+		return System.nanoTime() - timestamp;
+	}
+	
 	/**
 	 * Activation status, echo of the rACT bit (activation bit).
 	 * @return true - Gripper activation
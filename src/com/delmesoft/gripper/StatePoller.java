@@ -0,0 +1,132 @@
+package com.delmesoft.gripper;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Reads the Gripper status at a fixed rate on a dedicated thread and publishes
+ * the last decoded State, so readers never touch the device.
+ */
+public class StatePoller {
+
+	private final Gripper gripper;
+	private long period; // ms
+
+	private volatile State latestState;
+	private volatile Exception lastError;
+	private volatile boolean running;
+
+	private final CopyOnWriteArrayList<Consumer<State>> listeners = new CopyOnWriteArrayList<>();
+
+	private Thread thread;
+
+	public StatePoller(Gripper gripper) {
+		this(gripper, 20);
+	}
+
+	public StatePoller(Gripper gripper, long period) {
+		this.gripper = gripper;
+		this.period = period;
+	}
+
+	/**
+	 * Start the polling thread.
+	 */
+	public synchronized void start() {
+		if (!running) {
+			running = true;
+			thread = new Thread(this::run, "StatePoller");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stop the polling thread and wait for it to finish.
+	 * @throws InterruptedException
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if (running) {
+			running = false;
+			thread.interrupt();
+			thread.join();
+			thread = null;
+		}
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	private void run() {
+		final long periodNanos = TimeUnit.MILLISECONDS.toNanos(period);
+		long deadline = System.nanoTime();
+		while (running) {
+			try {
+				final State state = gripper.getState();
+				latestState = state;
+				lastError = null;
+				for (Consumer<State> listener : listeners) {
+					listener.accept(state);
+				}
+			} catch (Exception e) {
+				lastError = e;
+			}
+			deadline += periodNanos;
+			long delay = deadline - System.nanoTime();
+			if (delay > 0) {
+				LockSupport.parkNanos(delay);
+			} else {
+				deadline = System.nanoTime(); // overrun, do not try to catch up
+			}
+		}
+	}
+
+	/**
+	 * Returns the last State read by the poller without blocking.
+	 * @return last State or null if no sample is available yet
+	 */
+	public State getLatestState() {
+		return latestState;
+	}
+
+	/**
+	 * Returns the error of the last poll.
+	 * @return Exception or null if the last poll succeeded
+	 */
+	public Exception getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Add a listener called on the polling thread with every State read, it
+	 * must not block.
+	 * @param listener
+	 */
+	public void addListener(Consumer<State> listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Consumer<State> listener) {
+		listeners.remove(listener);
+	}
+
+	public Gripper getGripper() {
+		return gripper;
+	}
+
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Set the polling period, applied on the next start.
+	 * @param period in milliseconds
+	 */
+	public void setPeriod(long period) {
+		this.period = period;
+	}
+
+}
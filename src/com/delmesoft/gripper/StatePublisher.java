@@ -0,0 +1,319 @@
+package com.delmesoft.gripper;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Publishes the States read by one {@link StatePoller} to any number of
+ * subscribers, so N consumers cost one bus transaction per sample instead of N.
+ * <p>
+ * The interfaces follow java.util.concurrent.Flow, which is not available on
+ * Java 8. Every subscriber has its own demand and is called on the executor,
+ * one signal at a time, never on the polling thread. A subscriber without
+ * demand only keeps the newest State: a state stream is conflated, not
+ * buffered. A new subscriber receives the current State first.
+ * <p>
+ * With change-only emission a sample is published only when gSTA, gOBJ or the
+ * fault status change, or the position moves beyond the deadband from the
+ * last published sample. Published States are shared, subscribers must not
+ * modify them.
+ */
+public class StatePublisher implements AutoCloseable {
+
+	private final StatePoller poller;
+	private final Executor executor;
+	private final Consumer<State> listener = this::onSample;
+
+	private final CopyOnWriteArrayList<StateSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	private volatile boolean changeOnly;
+	private volatile int deadband;
+
+	private State current; // last published
+	private boolean closed;
+
+	private final LongAdder published = new LongAdder();
+	private final LongAdder filtered = new LongAdder();
+	private final LongAdder conflated = new LongAdder();
+
+	/**
+	 * Deliver on the common fork-join pool, or on a new thread per drain when
+	 * the pool has no parallelism (single CPU).
+	 * @param poller source of the States, started and stopped by the caller
+	 */
+	public StatePublisher(StatePoller poller) {
+		this(poller, ForkJoinPool.getCommonPoolParallelism() > 1 ? ForkJoinPool.commonPool() : task -> {
+			Thread thread = new Thread(task, "StatePublisher");
+			thread.setDaemon(true);
+			thread.start();
+		});
+	}
+
+	/**
+	 * @param poller source of the States, started and stopped by the caller
+	 * @param executor runs the subscriber calls, a blocking subscriber holds one of its threads
+	 */
+	public StatePublisher(StatePoller poller, Executor executor) {
+		this.poller = poller;
+		this.executor = executor;
+		poller.addListener(listener);
+	}
+
+	private synchronized void onSample(State state) {
+		if (closed) {
+			return;
+		}
+		if (changeOnly && current != null && !changed(current, state)) {
+			filtered.increment();
+			return;
+		}
+		current = state;
+		published.increment();
+		for (StateSubscription subscription : subscriptions) {
+			subscription.offer(state);
+		}
+	}
+
+	private boolean changed(State last, State state) {
+		return last.getGripperStatus() != state.getGripperStatus()
+				|| last.getObjectDetectionStatus() != state.getObjectDetectionStatus()
+				|| last.getFaultStatus() != state.getFaultStatus()
+				|| Math.abs((last.getPosition() & 0xFF) - (state.getPosition() & 0xFF)) > deadband;
+	}
+
+	/**
+	 * Add a subscriber. onSubscribe is called on the calling thread.
+	 * @param subscriber
+	 */
+	public void subscribe(Subscriber subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException();
+		}
+		StateSubscription subscription = new StateSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+		synchronized (this) {
+			if (closed) {
+				subscription.complete();
+				return;
+			}
+			subscriptions.add(subscription);
+			if (current != null) {
+				subscription.offer(current);
+			}
+		}
+	}
+
+	/**
+	 * Stop publishing and complete every subscriber. The poller is not stopped.
+	 */
+	@Override
+	public synchronized void close() {
+		if (!closed) {
+			closed = true;
+			poller.removeListener(listener);
+			for (StateSubscription subscription : subscriptions) {
+				subscription.complete();
+			}
+			subscriptions.clear();
+		}
+	}
+
+	public int getSubscriberCount() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * Returns the number of samples published.
+	 * @return
+	 */
+	public long getPublished() {
+		return published.sum();
+	}
+
+	/**
+	 * Returns the number of samples not published because nothing changed.
+	 * @return
+	 */
+	public long getFiltered() {
+		return filtered.sum();
+	}
+
+	/**
+	 * Returns the number of States replaced by a newer one before a subscriber requested them.
+	 * @return
+	 */
+	public long getConflated() {
+		return conflated.sum();
+	}
+
+	public boolean isChangeOnly() {
+		return changeOnly;
+	}
+
+	/**
+	 * @param changeOnly publish only the samples that differ from the last published one
+	 */
+	public void setChangeOnly(boolean changeOnly) {
+		this.changeOnly = changeOnly;
+	}
+
+	public int getDeadband() {
+		return deadband;
+	}
+
+	/**
+	 * @param deadband position change ignored by the change-only emission, 0 to 255
+	 */
+	public void setDeadband(int deadband) {
+		this.deadband = deadband;
+	}
+
+	public StatePoller getPoller() {
+		return poller;
+	}
+
+	/**
+	 * Receiver of the published States, see java.util.concurrent.Flow.Subscriber.
+	 */
+	public interface Subscriber {
+
+		void onSubscribe(Subscription subscription);
+
+		void onNext(State state);
+
+		void onError(Throwable throwable);
+
+		void onComplete();
+
+	}
+
+	/**
+	 * Link between the publisher and a subscriber, see java.util.concurrent.Flow.Subscription.
+	 */
+	public interface Subscription {
+
+		/**
+		 * Add demand.
+		 * @param n number of States, Long.MAX_VALUE for unbounded
+		 */
+		void request(long n);
+
+		/**
+		 * Stop receiving States, pending ones may still be delivered.
+		 */
+		void cancel();
+
+	}
+
+	private class StateSubscription implements Subscription, Runnable {
+
+		private final Subscriber subscriber;
+
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicReference<State> pending = new AtomicReference<>();
+		private final AtomicInteger wip = new AtomicInteger(); // drain requests, serializes the signals
+
+		private volatile boolean cancelled;
+		private volatile boolean completed;
+		private volatile Throwable error;
+
+		StateSubscription(Subscriber subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		void offer(State state) {
+			if (pending.getAndSet(state) != null) {
+				conflated.increment();
+			}
+			schedule();
+		}
+
+		void complete() {
+			completed = true;
+			schedule();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				error = new IllegalArgumentException("Invalid demand: " + n);
+			} else {
+				long current, next;
+				do {
+					current = demand.get();
+					if (current == Long.MAX_VALUE) {
+						break;
+					}
+					next = current + n;
+					if (next < 0) {
+						next = Long.MAX_VALUE;
+					}
+				} while (!demand.compareAndSet(current, next));
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+			pending.set(null);
+		}
+
+		private void schedule() {
+			if (wip.getAndIncrement() == 0) {
+				try {
+					executor.execute(this);
+				} catch (RuntimeException e) { // rejected
+					cancel();
+					wip.set(0);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				try {
+					drain();
+				} catch (Throwable e) { // a failing subscriber is cancelled
+					cancel();
+				}
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void drain() {
+			if (cancelled) {
+				return;
+			}
+			if (error != null) {
+				cancel();
+				subscriber.onError(error);
+				return;
+			}
+			if (demand.get() > 0) {
+				State state = pending.getAndSet(null);
+				if (state != null) {
+					if (demand.get() != Long.MAX_VALUE) {
+						demand.decrementAndGet();
+					}
+					subscriber.onNext(state);
+				}
+			}
+			if (completed && (pending.get() == null || demand.get() == 0) && !cancelled) {
+				cancel();
+				subscriber.onComplete();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,260 @@
+package com.delmesoft.gripper;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.delmesoft.gripper.metrics.LatencyHistogram;
+
+/**
+ * Streams a {@link Trajectory} to a Gripper at a fixed rate. Point i is due at
+ * start + i * period on the System.nanoTime() clock, so a late point does not
+ * shift the following ones. The thread parks until shortly before a deadline
+ * and spins the rest.
+ * <p>
+ * A point whose successor is already due when the link frees up is skipped
+ * instead of sent late. The last point is always sent. Jitter (send time minus
+ * deadline), pose round trip time and skipped points are recorded to find the
+ * rate the link can sustain.
+ */
+public class TrajectoryPlayer {
+
+	private final Gripper gripper;
+	private long period; // ns
+	private long spin = TimeUnit.MICROSECONDS.toNanos(200); // ns
+
+	private volatile boolean stopped;
+	private volatile Thread player; // thread in play()
+
+	private final LatencyHistogram jitter = new LatencyHistogram();
+	private final LatencyHistogram poseTime = new LatencyHistogram();
+	private final LongAdder played = new LongAdder();
+	private final LongAdder skipped = new LongAdder();
+
+	/**
+	 * @param gripper
+	 * @param period time between points
+	 * @param unit
+	 */
+	public TrajectoryPlayer(Gripper gripper, long period, TimeUnit unit) {
+		this.gripper = gripper;
+		setPeriod(period, unit);
+	}
+
+	/**
+	 * Send the points of a trajectory on the calling thread.
+	 * @param trajectory
+	 * @return false if stopped before the end, also by a stop() issued before the call
+	 * @throws Exception error of a pose, the trajectory is aborted
+	 */
+	public synchronized boolean play(Trajectory trajectory) throws Exception {
+		player = Thread.currentThread();
+		try {
+			final int size = trajectory.size();
+			final long period = this.period;
+			final long start = System.nanoTime();
+			for (int i = 0; i < size; i++) {
+				if (stopped) {
+					return false;
+				}
+				final long deadline = start + i * period;
+				if (i + 1 < size && System.nanoTime() - (deadline + period) >= 0) {
+					skipped.increment(); // the next point is already due
+					continue;
+				}
+				if (!waitUntil(deadline)) {
+					return false;
+				}
+				final long now = System.nanoTime();
+				jitter.record(now - deadline);
+				gripper.pose(trajectory.getPosition(i), trajectory.getSpeed(i), trajectory.getForce(i));
+				poseTime.record(System.nanoTime() - now);
+				played.increment();
+			}
+			return true;
+		} finally {
+			player = null;
+			stopped = false; // consumed by this play
+		}
+	}
+
+	private boolean waitUntil(long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > spin) {
+			LockSupport.parkNanos(remaining - spin);
+			if (stopped) {
+				return false;
+			}
+		}
+		while (deadline - System.nanoTime() > 0) {
+			// spin, park overshoots by tens of microseconds
+		}
+		return true;
+	}
+
+	/**
+	 * Stop the trajectory being played, or the next one if none is playing.
+	 * A wait for the next deadline ends at once, a pose in progress is
+	 * completed first.
+	 */
+	public void stop() {
+		stopped = true;
+		LockSupport.unpark(player);
+	}
+
+	/**
+	 * Returns the delay between the deadlines and the start of the poses.
+	 * @return histogram in nanoseconds
+	 */
+	public LatencyHistogram getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * Returns the time taken by the poses.
+	 * @return histogram in nanoseconds
+	 */
+	public LatencyHistogram getPoseTime() {
+		return poseTime;
+	}
+
+	/**
+	 * Returns the number of points sent.
+	 * @return
+	 */
+	public long getPlayed() {
+		return played.sum();
+	}
+
+	/**
+	 * Returns the number of points skipped because they missed their deadline.
+	 * @return
+	 */
+	public long getSkipped() {
+		return skipped.sum();
+	}
+
+	/**
+	 * Clear the jitter, pose time and point counters.
+	 */
+	public void resetStatistics() {
+		jitter.reset();
+		poseTime.reset();
+		played.reset();
+		skipped.reset();
+	}
+
+	public Gripper getGripper() {
+		return gripper;
+	}
+
+	/**
+	 * Returns the time between points.
+	 * @return in nanoseconds
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Set the time between points, applied on the next play.
+	 * @param period
+	 * @param unit
+	 */
+	public void setPeriod(long period, TimeUnit unit) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("Invalid period: " + period);
+		}
+		this.period = unit.toNanos(period);
+	}
+
+	/**
+	 * Returns the time spun before a deadline instead of parked.
+	 * @return in nanoseconds
+	 */
+	public long getSpin() {
+		return spin;
+	}
+
+	/**
+	 * Set the time spun before a deadline instead of parked, trades CPU for jitter.
+	 * @param spin 0 to always park
+	 * @param unit
+	 */
+	public void setSpin(long spin, TimeUnit unit) {
+		this.spin = unit.toNanos(spin);
+	}
+
+	@Override
+	public String toString() {
+		return "TrajectoryPlayer [played=" + getPlayed() + ", skipped=" + getSkipped()
+				+ ", p50Jitter=" + jitter.getPercentile(0.5) / 1000 + "us, p99Jitter=" + jitter.getPercentile(0.99) / 1000
+				+ "us, maxJitter=" + jitter.getMax() / 1000 + "us, p99Pose=" + poseTime.getPercentile(0.99) / 1000 + "us]";
+	}
+
+	/**
+	 * Sequence of setpoints, one per period.
+	 */
+	public static class Trajectory {
+
+		private byte[] points = new byte[3 * 16]; // position, speed, force
+		private int size;
+
+		/**
+		 * Append a setpoint.
+		 * @param position rPR, 0 -> open, 255 -> close
+		 * @param speed 0 - 255
+		 * @param force 0 - 255
+		 * @return this
+		 */
+		public Trajectory add(int position, int speed, int force) {
+			if (3 * size == points.length) {
+				points = Arrays.copyOf(points, points.length * 2);
+			}
+			points[3 * size] = (byte) position;
+			points[3 * size + 1] = (byte) speed;
+			points[3 * size + 2] = (byte) force;
+			size++;
+			return this;
+		}
+
+		/**
+		 * Linear position ramp, e.g. a soft close.
+		 * @param from first position, 0 - 255
+		 * @param to last position, 0 - 255
+		 * @param speed 0 - 255
+		 * @param force 0 - 255
+		 * @param points number of setpoints, at least 2
+		 * @return new Trajectory
+		 */
+		public static Trajectory ramp(int from, int to, int speed, int force, int points) {
+			if (points < 2) {
+				throw new IllegalArgumentException("Invalid point count: " + points);
+			}
+			Trajectory trajectory = new Trajectory();
+			for (int i = 0; i < points; i++) {
+				trajectory.add(from + Math.round((to - from) * (float) i / (points - 1)), speed, force);
+			}
+			return trajectory;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public byte getPosition(int index) {
+			return points[3 * index];
+		}
+
+		public byte getSpeed(int index) {
+			return points[3 * index + 1];
+		}
+
+		public byte getForce(int index) {
+			return points[3 * index + 2];
+		}
+
+	}
+
+}
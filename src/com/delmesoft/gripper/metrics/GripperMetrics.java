@@ -0,0 +1,315 @@
+package com.delmesoft.gripper.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per gripper latency histograms and error counters.
+ * Grippers without metrics (the default) only pay a null check per call. Set
+ * the system property <code>com.delmesoft.gripper.metrics=true</code> to create
+ * and register them for every new gripper, or pass an instance to
+ * <code>setMetrics()</code>.
+ */
+public class GripperMetrics implements GripperMetricsMBean {
+
+	public static final boolean ENABLED = Boolean.getBoolean("com.delmesoft.gripper.metrics");
+
+	/**
+	 * True if the runtime provides Flight Recorder, see {@link ModbusTransactionEvent}.
+	 */
+	public static final boolean JFR_AVAILABLE = isAvailable("jdk.jfr.Event");
+
+	public static final String DOMAIN = "com.delmesoft.gripper";
+
+	private volatile String name;
+
+	private final LatencyHistogram pose = new LatencyHistogram();
+	private final LatencyHistogram state = new LatencyHistogram();
+	private final LatencyHistogram poseAndRead = new LatencyHistogram();
+	private final LatencyHistogram restart = new LatencyHistogram();
+	private final LatencyHistogram read = new LatencyHistogram();
+
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder crcErrors = new LongAdder();
+	private final LongAdder ackErrors = new LongAdder();
+
+	private volatile long since = System.nanoTime();
+
+	private ObjectName objectName;
+
+	public GripperMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Default metrics of a new gripper, the gripper registers them on connect
+	 * under the name its transport has then.
+	 * @param name gripper name, i.e. port or host:port
+	 * @return unregistered metrics, or null if {@link #ENABLED} is false
+	 */
+	public static GripperMetrics create(String name) {
+		return ENABLED ? new GripperMetrics(name) : null;
+	}
+
+	/**
+	 * Register this instance in the platform MBean server, replacing a previous
+	 * registration with the same name.
+	 * @throws Exception
+	 */
+	public void register() throws Exception {
+		register(name);
+	}
+
+	/**
+	 * Register this instance under a name, moving the registration if it was
+	 * registered under another one.
+	 * @param name gripper name, i.e. port or host:port
+	 * @throws Exception
+	 */
+	public synchronized void register(String name) throws Exception {
+		ObjectName objectName = new ObjectName(DOMAIN + ":type=GripperMetrics,name=" + ObjectName.quote(name));
+		if (!objectName.equals(this.objectName)) {
+			unregister();
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(this, objectName);
+			this.objectName = objectName;
+		}
+		this.name = name;
+	}
+
+	public synchronized void unregister() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (Exception ignore) {
+			} finally {
+				objectName = null;
+			}
+		}
+	}
+
+	public LatencyHistogram pose() {
+		return pose;
+	}
+
+	public LatencyHistogram state() {
+		return state;
+	}
+
+	/**
+	 * Combined pose and status transactions (poseAndGetState), a write plus a
+	 * read, kept apart from the plain poses.
+	 * @return
+	 */
+	public LatencyHistogram poseAndRead() {
+		return poseAndRead;
+	}
+
+	public LatencyHistogram restart() {
+		return restart;
+	}
+
+	/**
+	 * Time blocked in raw reads waiting for response bytes.
+	 * @return
+	 */
+	public LatencyHistogram read() {
+		return read;
+	}
+
+	public void timeout() {
+		timeouts.increment();
+	}
+
+	public void crcError() {
+		crcErrors.increment();
+	}
+
+	public void ackError() {
+		ackErrors.increment();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getPoseCount() {
+		return pose.getCount();
+	}
+
+	@Override
+	public double getPoseP50() {
+		return micros(pose.getPercentile(0.5));
+	}
+
+	@Override
+	public double getPoseP99() {
+		return micros(pose.getPercentile(0.99));
+	}
+
+	@Override
+	public double getPoseP999() {
+		return micros(pose.getPercentile(0.999));
+	}
+
+	@Override
+	public double getPoseMax() {
+		return micros(pose.getMax());
+	}
+
+	@Override
+	public long getStateCount() {
+		return state.getCount();
+	}
+
+	@Override
+	public double getStateP50() {
+		return micros(state.getPercentile(0.5));
+	}
+
+	@Override
+	public double getStateP99() {
+		return micros(state.getPercentile(0.99));
+	}
+
+	@Override
+	public double getStateP999() {
+		return micros(state.getPercentile(0.999));
+	}
+
+	@Override
+	public double getStateMax() {
+		return micros(state.getMax());
+	}
+
+	@Override
+	public long getPoseAndReadCount() {
+		return poseAndRead.getCount();
+	}
+
+	@Override
+	public double getPoseAndReadP50() {
+		return micros(poseAndRead.getPercentile(0.5));
+	}
+
+	@Override
+	public double getPoseAndReadP99() {
+		return micros(poseAndRead.getPercentile(0.99));
+	}
+
+	@Override
+	public double getPoseAndReadP999() {
+		return micros(poseAndRead.getPercentile(0.999));
+	}
+
+	@Override
+	public double getPoseAndReadMax() {
+		return micros(poseAndRead.getMax());
+	}
+
+	@Override
+	public long getRestartCount() {
+		return restart.getCount();
+	}
+
+	@Override
+	public double getRestartP50() {
+		return micros(restart.getPercentile(0.5));
+	}
+
+	@Override
+	public double getRestartP99() {
+		return micros(restart.getPercentile(0.99));
+	}
+
+	@Override
+	public double getRestartP999() {
+		return micros(restart.getPercentile(0.999));
+	}
+
+	@Override
+	public double getRestartMax() {
+		return micros(restart.getMax());
+	}
+
+	@Override
+	public long getReadCount() {
+		return read.getCount();
+	}
+
+	@Override
+	public double getReadP50() {
+		return micros(read.getPercentile(0.5));
+	}
+
+	@Override
+	public double getReadP99() {
+		return micros(read.getPercentile(0.99));
+	}
+
+	@Override
+	public double getReadP999() {
+		return micros(read.getPercentile(0.999));
+	}
+
+	@Override
+	public double getReadMax() {
+		return micros(read.getMax());
+	}
+
+	@Override
+	public double getThroughput() {
+		double seconds = (System.nanoTime() - since) / 1e9;
+		return seconds <= 0 ? 0.0 : (pose.getCount() + state.getCount() + poseAndRead.getCount()) / seconds;
+	}
+
+	@Override
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	@Override
+	public long getCrcErrors() {
+		return crcErrors.sum();
+	}
+
+	@Override
+	public long getAckErrors() {
+		return ackErrors.sum();
+	}
+
+	@Override
+	public void reset() {
+		pose.reset();
+		state.reset();
+		poseAndRead.reset();
+		restart.reset();
+		read.reset();
+		timeouts.reset();
+		crcErrors.reset();
+		ackErrors.reset();
+		since = System.nanoTime();
+	}
+
+	private static double micros(long nanos) {
+		return nanos / 1e3;
+	}
+
+	private static boolean isAvailable(String className) {
+		try {
+			Class.forName(className, false, GripperMetrics.class.getClassLoader());
+			return true;
+		} catch (Throwable e) {
+			return false;
+		}
+	}
+
+}
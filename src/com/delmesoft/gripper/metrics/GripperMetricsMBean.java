@@ -0,0 +1,74 @@
+package com.delmesoft.gripper.metrics;
+
+/**
+ * JMX view of {@link GripperMetrics}. Latencies are in microseconds.
+ */
+public interface GripperMetricsMBean {
+
+	String getName();
+
+	long getPoseCount();
+
+	double getPoseP50();
+
+	double getPoseP99();
+
+	double getPoseP999();
+
+	double getPoseMax();
+
+	long getStateCount();
+
+	double getStateP50();
+
+	double getStateP99();
+
+	double getStateP999();
+
+	double getStateMax();
+
+	long getPoseAndReadCount();
+
+	double getPoseAndReadP50();
+
+	double getPoseAndReadP99();
+
+	double getPoseAndReadP999();
+
+	double getPoseAndReadMax();
+
+	long getRestartCount();
+
+	double getRestartP50();
+
+	double getRestartP99();
+
+	double getRestartP999();
+
+	double getRestartMax();
+
+	long getReadCount();
+
+	double getReadP50();
+
+	double getReadP99();
+
+	double getReadP999();
+
+	double getReadMax();
+
+	/**
+	 * Completed pose and status transactions per second since the last reset.
+	 * @return
+	 */
+	double getThroughput();
+
+	long getTimeouts();
+
+	long getCrcErrors();
+
+	long getAckErrors();
+
+	void reset();
+
+}
@@ -0,0 +1,49 @@
+package com.delmesoft.gripper.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event of a request/response exchange with a gripper.
+ * Only reference it when {@link GripperMetrics#JFR_AVAILABLE} is true.
+ */
+@Name("com.delmesoft.gripper.ModbusTransaction")
+@Label("Modbus Transaction")
+@Category({ "Robotiq", "Modbus" })
+@Description("Request/response exchange with a gripper")
+@StackTrace(false)
+public class ModbusTransactionEvent extends jdk.jfr.Event {
+
+	public static final String OK = "OK";
+	public static final String TIMEOUT = "Timeout";
+	public static final String EXCEPTION = "Exception response";
+	public static final String IO_ERROR = "I/O error";
+
+	@Label("Gripper")
+	public String gripper;
+
+	@Label("Slave ID")
+	public int slaveId;
+
+	@Label("Function Code")
+	public int function;
+
+	@Label("Bytes Written")
+	public int bytesWritten;
+
+	@Label("Bytes Read")
+	public int bytesRead;
+
+	@Label("Wait Time")
+	@Description("Time from the end of the write to the end of the response")
+	@Timespan(Timespan.NANOSECONDS)
+	public long waitTime;
+
+	@Label("Outcome")
+	public String outcome;
+
+}
@@ -0,0 +1,463 @@
+package com.delmesoft.gripper.sim;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.delmesoft.gripper.Gripper;
+import com.delmesoft.gripper.utils.ModbusRtu;
+import com.delmesoft.gripper.utils.SyncSerialPort;
+
+/**
+ * Robotiq 2F device simulator speaking Modbus RTU. It can be served over TCP
+ * with {@link #listen(int)} or over a pseudo-serial line with
+ * {@link #createSerialPort()}.
+ *
+ * Positions follow the device convention: 0x00 fully open, 0xFF fully closed.
+ */
+public class GripperSimulator {
+
+	private int slaveId = Gripper.DEFAULT_SLAVE_ID;
+
+	// 2F-85 defaults
+	private double stroke = 85.0; // mm
+	private double minSpeed = 20.0; // mm/s
+	private double maxSpeed = 150.0; // mm/s
+
+	private long activationDelay = TimeUnit.MILLISECONDS.toNanos(500);
+	private long latency; // ns per frame
+	private int objectPosition = -1; // position where the fingers touch an object while closing, -1 -> none
+	private int internalObjectPosition = -1; // position where the fingers touch an object while opening, -1 -> none
+
+	// action request
+	private int rACT;
+	private int rGTO;
+	private int rATR;
+	private int rPR;
+	private int rSP;
+	private int rFR;
+
+	// gripper status
+	private int gSTA;
+	private int gOBJ;
+	private int fault;
+	private double position;
+	private int current;
+	private boolean moving;
+	private long activationStart;
+	private long lastUpdate = System.nanoTime();
+
+	private ServerSocket serverSocket;
+	private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Advance the finger kinematics to the given time.
+	 * @param now System.nanoTime()
+	 */
+	public synchronized void update(long now) {
+		double dt = (now - lastUpdate) / 1e9;
+		lastUpdate = now;
+		if (rACT == 0) {
+			gSTA = 0x00;
+			gOBJ = 0x00;
+			current = 0;
+			moving = false;
+			return;
+		}
+		if (gSTA == 0x01 && now - activationStart >= activationDelay) {
+			gSTA = 0x03; // activation completed
+		}
+		if (gSTA != 0x03 || rGTO == 0) {
+			current = 0;
+			return;
+		}
+		if (moving) {
+			double velocity = (minSpeed + (maxSpeed - minSpeed) * rSP / 255.0) / stroke * 255.0; // position units per second
+			double target = rPR;
+			int contact = 0x03; // at requested position
+			if (target > position && objectPosition >= 0 && objectPosition >= position && objectPosition < target) {
+				target = objectPosition; // closing on an object
+				contact = 0x02;
+			} else if (target < position && internalObjectPosition >= 0 && internalObjectPosition <= position && internalObjectPosition > target) {
+				target = internalObjectPosition; // opening inside an object
+				contact = 0x01;
+			}
+			double step = velocity * dt;
+			if (Math.abs(target - position) <= step) {
+				position = target;
+				moving = false;
+				gOBJ = contact;
+			} else {
+				position += Math.signum(target - position) * step;
+				gOBJ = 0x00;
+			}
+		}
+		if (moving) {
+			current = 10; // 100 mA
+		} else if (gOBJ == 0x01 || gOBJ == 0x02) {
+			current = 10 + rFR * 50 / 255; // 100 mA to 600 mA
+		} else {
+			current = 0;
+		}
+	}
+
+	private void writeActionRequest(byte[] data, int offset, int quantity, long now) {
+		update(now);
+		int action = data[offset] & 0xFF;
+		int act = action & 0b1;
+		int gto = (action >> 3) & 0b1;
+		rATR = (action >> 4) & 0b1;
+		if (act == 1 && rACT == 0) {
+			gSTA = 0x01; // activation in progress
+			activationStart = now;
+		}
+		rACT = act;
+		if (quantity >= 2) {
+			rPR = data[offset + 3] & 0xFF;
+		}
+		if (quantity >= 3) {
+			rSP = data[offset + 4] & 0xFF;
+			rFR = data[offset + 5] & 0xFF;
+		}
+		if (gto == 1 && rACT == 1) {
+			moving = true; // a new request restarts the motion
+			gOBJ = 0x00;
+		}
+		rGTO = gto;
+	}
+
+	private void readStatus(byte[] data, int offset) {
+		data[offset] = (byte) (rACT | (rGTO << 3) | (gSTA << 4) | (gOBJ << 6));
+		data[offset + 1] = 0x00;
+		data[offset + 2] = (byte) fault;
+		data[offset + 3] = (byte) rPR;
+		data[offset + 4] = (byte) Math.round(position);
+		data[offset + 5] = (byte) current;
+	}
+
+	private void readActionRequest(byte[] data, int offset) {
+		data[offset] = (byte) (rACT | (rGTO << 3) | (rATR << 4));
+		data[offset + 1] = 0x00;
+		data[offset + 2] = 0x00;
+		data[offset + 3] = (byte) rPR;
+		data[offset + 4] = (byte) rSP;
+		data[offset + 5] = (byte) rFR;
+	}
+
+	private boolean read(int address, int quantity, byte[] data, int offset) {
+		if (quantity < 1 || quantity > 3) {
+			return false;
+		}
+		byte[] registers = new byte[6];
+		if (address == Gripper.STATUS_REGISTER) {
+			readStatus(registers, 0);
+		} else if (address == Gripper.ACTION_REQUEST_REGISTER) {
+			readActionRequest(registers, 0);
+		} else {
+			return false;
+		}
+		System.arraycopy(registers, 0, data, offset, quantity * 2);
+		return true;
+	}
+
+	/**
+	 * Process a request frame.
+	 * @param frame
+	 * @param len frame length including CRC
+	 * @return response frame or null if the request is ignored
+	 */
+	public synchronized byte[] process(byte[] frame, int len) {
+		if (len < 4 || (frame[0] & 0xFF) != slaveId || !ModbusRtu.checkCRC(frame, 0, len)) {
+			return null; // not for us or corrupted, no reply
+		}
+		long now = System.nanoTime();
+		int function = frame[1] & 0xFF;
+		byte[] response;
+		switch (function) {
+		case ModbusRtu.READ_HOLDING_REGISTERS: {
+			int address = word(frame, 2);
+			int quantity = word(frame, 4);
+			update(now);
+			response = new byte[5 + quantity * 2];
+			if (!read(address, quantity, response, 3)) {
+				return exception(function, 0x02);
+			}
+			response[2] = (byte) (quantity * 2);
+			break;
+		}
+		case ModbusRtu.WRITE_MULTIPLE_REGISTERS: {
+			int address = word(frame, 2);
+			int quantity = word(frame, 4);
+			if (address != Gripper.ACTION_REQUEST_REGISTER || quantity < 1 || quantity > 3) {
+				return exception(function, 0x02);
+			}
+			writeActionRequest(frame, 7, quantity, now);
+			response = new byte[8];
+			System.arraycopy(frame, 2, response, 2, 4);
+			break;
+		}
+		case ModbusRtu.READ_WRITE_MULTIPLE_REGISTERS: {
+			int readAddress = word(frame, 2);
+			int readQuantity = word(frame, 4);
+			int writeAddress = word(frame, 6);
+			int writeQuantity = word(frame, 8);
+			if (writeAddress != Gripper.ACTION_REQUEST_REGISTER || writeQuantity < 1 || writeQuantity > 3) {
+				return exception(function, 0x02);
+			}
+			writeActionRequest(frame, 11, writeQuantity, now); // write before read
+			response = new byte[5 + readQuantity * 2];
+			if (!read(readAddress, readQuantity, response, 3)) {
+				return exception(function, 0x02);
+			}
+			response[2] = (byte) (readQuantity * 2);
+			break;
+		}
+		default:
+			return exception(function, 0x01);
+		}
+		response[0] = (byte) slaveId;
+		response[1] = (byte) function;
+		ModbusRtu.appendCRC(response);
+		return response;
+	}
+
+	private byte[] exception(int function, int code) {
+		byte[] response = { (byte) slaveId, (byte) (function | 0x80), (byte) code, 0x00, 0x00 };
+		ModbusRtu.appendCRC(response);
+		return response;
+	}
+
+	private static int word(byte[] data, int offset) {
+		return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+	}
+
+	/**
+	 * Read request frames from the stream and answer them until the stream is closed.
+	 * @param is
+	 * @param os
+	 * @throws IOException
+	 */
+	public void serve(InputStream is, OutputStream os) throws IOException {
+		DataInputStream in = new DataInputStream(is);
+		byte[] frame = new byte[260];
+		while (true) {
+			in.readFully(frame, 0, 2);
+			int len;
+			switch (frame[1]) {
+			case ModbusRtu.READ_HOLDING_REGISTERS:
+				in.readFully(frame, 2, 6);
+				len = 8;
+				break;
+			case ModbusRtu.WRITE_MULTIPLE_REGISTERS:
+				in.readFully(frame, 2, 5);
+				len = 9 + (frame[6] & 0xFF);
+				in.readFully(frame, 7, len - 7);
+				break;
+			case ModbusRtu.READ_WRITE_MULTIPLE_REGISTERS:
+				in.readFully(frame, 2, 9);
+				len = 13 + (frame[10] & 0xFF);
+				in.readFully(frame, 11, len - 11);
+				break;
+			default:
+				// unknown length, drop what has been received
+				while (in.available() > 0) {
+					in.read(frame);
+				}
+				continue;
+			}
+			byte[] response = process(frame, len);
+			if (response != null) {
+				if (latency > 0) {
+					LockSupport.parkNanos(latency);
+				}
+				os.write(response);
+				os.flush();
+			}
+		}
+	}
+
+	/**
+	 * Serve the simulator over TCP.
+	 * @param port TCP port, 0 for an ephemeral port
+	 * @throws IOException
+	 */
+	public synchronized void listen(int port) throws IOException {
+		if (serverSocket == null) {
+			serverSocket = new ServerSocket(port);
+			Thread thread = new Thread(this::accept, "GripperSimulator-" + serverSocket.getLocalPort());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private void accept() {
+		try {
+			while (true) {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				sockets.add(socket);
+				Thread thread = new Thread(() -> {
+					try (Socket s = socket) {
+						serve(s.getInputStream(), s.getOutputStream());
+					} catch (IOException ignore) { // disconnected
+					} finally {
+						sockets.remove(socket);
+					}
+				}, "GripperSimulator-" + socket.getPort());
+				thread.setDaemon(true);
+				thread.start();
+			}
+		} catch (IOException ignore) { // closed
+		}
+	}
+
+	/**
+	 * Stop the TCP server and close its connections.
+	 */
+	public synchronized void close() {
+		if (serverSocket != null) {
+			try {
+				serverSocket.close();
+			} catch (IOException ignore) {
+			}
+			serverSocket = null;
+		}
+		for (Socket socket : sockets) {
+			try {
+				socket.close();
+			} catch (IOException ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Returns the TCP port the simulator listens on.
+	 * @return port or -1 if not listening
+	 */
+	public synchronized int getPort() {
+		return serverSocket != null ? serverSocket.getLocalPort() : -1;
+	}
+
+	/**
+	 * Create a serial port whose line is connected to this simulator.
+	 * @return SyncSerialPort to pass to a SerialGripper
+	 */
+	public SyncSerialPort createSerialPort() {
+		return new SimulatedSerialPort(this);
+	}
+
+	public int getSlaveId() {
+		return slaveId;
+	}
+
+	public void setSlaveId(int slaveId) {
+		this.slaveId = slaveId;
+	}
+
+	/**
+	 * Set the finger kinematics.
+	 * @param stroke finger stroke in mm
+	 * @param minSpeed speed at speed byte 0 in mm/s
+	 * @param maxSpeed speed at speed byte 255 in mm/s
+	 */
+	public synchronized void setKinematics(double stroke, double minSpeed, double maxSpeed) {
+		this.stroke = stroke;
+		this.minSpeed = minSpeed;
+		this.maxSpeed = maxSpeed;
+	}
+
+	public synchronized long getActivationDelay(TimeUnit unit) {
+		return unit.convert(activationDelay, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Set the time the activation takes.
+	 * @param activationDelay
+	 * @param unit
+	 */
+	public synchronized void setActivationDelay(long activationDelay, TimeUnit unit) {
+		this.activationDelay = unit.toNanos(activationDelay);
+	}
+
+	public long getLatency(TimeUnit unit) {
+		return unit.convert(latency, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Set the delay before each response is sent.
+	 * @param latency
+	 * @param unit
+	 */
+	public void setLatency(long latency, TimeUnit unit) {
+		this.latency = unit.toNanos(latency);
+	}
+
+	public synchronized int getObjectPosition() {
+		return objectPosition;
+	}
+
+	/**
+	 * Place an object between the fingers, touched while closing (gOBJ 0x02).
+	 * @param objectPosition finger position where the object is touched, -1 removes the object
+	 */
+	public synchronized void setObjectPosition(int objectPosition) {
+		this.objectPosition = objectPosition;
+		if (rGTO == 1) {
+			moving = true; // re-evaluate the contact
+		}
+	}
+
+	public synchronized int getInternalObjectPosition() {
+		return internalObjectPosition;
+	}
+
+	/**
+	 * Place an object around the fingers, i.e. an internal grip in a bore,
+	 * touched while opening (gOBJ 0x01).
+	 * @param internalObjectPosition finger position where the object is touched, -1 removes the object
+	 */
+	public synchronized void setInternalObjectPosition(int internalObjectPosition) {
+		this.internalObjectPosition = internalObjectPosition;
+		if (rGTO == 1) {
+			moving = true; // re-evaluate the contact
+		}
+	}
+
+	/**
+	 * Set the fault status reported by the device.
+	 * @param fault
+	 */
+	public synchronized void setFault(int fault) {
+		this.fault = fault;
+	}
+
+	public synchronized double getPosition() {
+		return position;
+	}
+
+	/**
+	 * Move the fingers instantly.
+	 * @param position 0x00 open, 0xFF closed
+	 */
+	public synchronized void setPosition(double position) {
+		this.position = position;
+	}
+
+	/**
+	 * Put the simulator in the activated state, as a device that was activated
+	 * by a previous connection.
+	 */
+	public synchronized void activate() {
+		rACT = 1;
+		gSTA = 0x03;
+		lastUpdate = System.nanoTime();
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.delmesoft.gripper.sim;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import com.fazecast.jSerialComm.SerialPortTimeoutException;
+
+/**
+ * In-memory byte pipe with an optional read timeout, used as a pseudo-serial
+ * line. Unlike PipedInputStream it does not depend on the writer thread.
+ */
+class Pipe {
+
+	private final byte[] buffer;
+	private int head; // read index
+	private int size;
+	private boolean closed;
+
+	private volatile long timeout; // ns, 0 -> wait forever
+
+	private final InputStream inputStream = new InputStream() {
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return Pipe.this.read(b, off, len);
+		}
+
+		@Override
+		public int available() {
+			synchronized (Pipe.this) {
+				return size;
+			}
+		}
+
+		@Override
+		public void close() {
+			Pipe.this.close();
+		}
+
+	};
+
+	private final OutputStream outputStream = new OutputStream() {
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			Pipe.this.write(b, off, len);
+		}
+
+		@Override
+		public void close() {
+			Pipe.this.close();
+		}
+
+	};
+
+	Pipe() {
+		this(4096);
+	}
+
+	Pipe(int capacity) {
+		buffer = new byte[capacity];
+	}
+
+	private synchronized int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		long deadline = System.nanoTime() + timeout;
+		while (size == 0) {
+			if (closed) {
+				return -1;
+			}
+			try {
+				if (timeout > 0) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						throw new SerialPortTimeoutException("The read operation timed out before any data was returned.");
+					}
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				} else {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new java.io.InterruptedIOException();
+			}
+		}
+		int n = Math.min(len, size);
+		for (int i = 0; i < n; i++) {
+			b[off + i] = buffer[head];
+			head = (head + 1) % buffer.length;
+		}
+		size -= n;
+		notifyAll();
+		return n;
+	}
+
+	private synchronized void write(byte[] b, int off, int len) throws IOException {
+		for (int i = 0; i < len; i++) {
+			while (size == buffer.length) {
+				if (closed) {
+					throw new EOFException();
+				}
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new java.io.InterruptedIOException();
+				}
+			}
+			if (closed) {
+				throw new EOFException();
+			}
+			buffer[(head + size) % buffer.length] = b[off + i];
+			size++;
+		}
+		notifyAll();
+	}
+
+	synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * @param timeout read timeout in milliseconds, 0 waits forever
+	 */
+	void setTimeout(long timeout) {
+		this.timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+	}
+
+	InputStream getInputStream() {
+		return inputStream;
+	}
+
+	OutputStream getOutputStream() {
+		return outputStream;
+	}
+
+}
@@ -0,0 +1,127 @@
+package com.delmesoft.gripper.sim;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.delmesoft.gripper.utils.SyncSerialPort;
+
+/**
+ * SyncSerialPort whose line is an in-memory pipe to a {@link GripperSimulator}.
+ */
+public class SimulatedSerialPort extends SyncSerialPort {
+
+	private final GripperSimulator simulator;
+
+	private Pipe rx; // device -> host
+	private Pipe tx; // host -> device
+	private InputStream is;
+	private OutputStream os;
+
+	public SimulatedSerialPort(GripperSimulator simulator) {
+		this.simulator = simulator;
+		setPort("SIM");
+	}
+
+	@Override
+	public synchronized void connect() {
+		if (rx == null) {
+			rx = new Pipe();
+			tx = new Pipe();
+			rx.setTimeout(getResponseTimeout());
+			is = rx.getInputStream();
+			os = tx.getOutputStream();
+			final Pipe line = tx;
+			final Pipe reply = rx;
+			Thread thread = new Thread(() -> {
+				try {
+					simulator.serve(line.getInputStream(), reply.getOutputStream());
+				} catch (IOException ignore) { // disconnected
+				}
+			}, "SimulatedSerialPort");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	@Override
+	public synchronized boolean isConnected() {
+		return rx != null;
+	}
+
+	@Override
+	public synchronized void disconnect() {
+		if (rx != null) {
+			rx.close();
+			tx.close();
+			rx = null;
+			tx = null;
+			is = null;
+			os = null;
+		}
+	}
+
+	@Override
+	protected void writePort(byte[] data, int offset, int len, boolean flush) throws IOException {
+		OutputStream os = this.os;
+		if (os != null) {
+			os.write(data, offset, len);
+		}
+	}
+
+	@Override
+	public int available() throws IOException {
+		return is().available();
+	}
+
+	@Override
+	protected int readPort(byte[] data, int offset, int len) throws IOException {
+		return is().read(data, offset, len);
+	}
+
+	@Override
+	protected synchronized void applyTimeout(int timeout) {
+		if (rx != null) {
+			rx.setTimeout(timeout);
+		}
+	}
+
+	/**
+	 * The pipe has no transmission delay, frames take no line time.
+	 */
+	@Override
+	public long getCharacterTime() {
+		return 0;
+	}
+
+	/**
+	 * Nor does it need silence between frames.
+	 */
+	@Override
+	public long getInterFrameDelay() {
+		return 0;
+	}
+
+	@Override
+	public int read() throws IOException {
+		return is().read();
+	}
+
+	@Override
+	public void flush() throws IOException {
+	}
+
+	private InputStream is() throws IOException {
+		InputStream is = this.is;
+		if (is == null) {
+			throw new EOFException("Port closed");
+		}
+		return is;
+	}
+
+	public GripperSimulator getSimulator() {
+		return simulator;
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.delmesoft.gripper.telemetry;
+
+/**
+ * Running statistics of the grip current (Welford's algorithm).
+ */
+public class CurrentStatistics {
+
+	private long count;
+	private int min = Integer.MAX_VALUE;
+	private int max = Integer.MIN_VALUE;
+	private double mean;
+	private double m2;
+
+	/**
+	 * Add a sample.
+	 * @param current in mA
+	 */
+	public void add(int current) {
+		count++;
+		min = Math.min(min, current);
+		max = Math.max(max, current);
+		double delta = current - mean;
+		mean += delta / count;
+		m2 += delta * (current - mean);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return in mA, 0 without samples
+	 */
+	public int getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * @return in mA, 0 without samples
+	 */
+	public int getMax() {
+		return count == 0 ? 0 : max;
+	}
+
+	/**
+	 * @return in mA
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * @return sample standard deviation in mA
+	 */
+	public double getStandardDeviation() {
+		return count < 2 ? 0.0 : Math.sqrt(m2 / (count - 1));
+	}
+
+	@Override
+	public String toString() {
+		return "CurrentStatistics [count=" + count + ", min=" + getMin() + ", max=" + getMax() + ", mean=" + mean + ", stddev=" + getStandardDeviation() + "]";
+	}
+
+}
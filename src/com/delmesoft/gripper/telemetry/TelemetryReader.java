@@ -0,0 +1,334 @@
+package com.delmesoft.gripper.telemetry;
+
+import static com.delmesoft.gripper.telemetry.TelemetryRecorder.BASE_TIME;
+import static com.delmesoft.gripper.telemetry.TelemetryRecorder.BLOCK_RECORDS;
+import static com.delmesoft.gripper.telemetry.TelemetryRecorder.COUNT;
+import static com.delmesoft.gripper.telemetry.TelemetryRecorder.HEADER_SIZE;
+import static com.delmesoft.gripper.telemetry.TelemetryRecorder.ID;
+import static com.delmesoft.gripper.telemetry.TelemetryRecorder.INDEX_ENTRY_SIZE;
+import static com.delmesoft.gripper.telemetry.TelemetryRecorder.LAST_TIME;
+import static com.delmesoft.gripper.telemetry.TelemetryRecorder.MAGIC;
+import static com.delmesoft.gripper.telemetry.TelemetryRecorder.PREFIX;
+import static com.delmesoft.gripper.telemetry.TelemetryRecorder.SUFFIX;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the segments written by a {@link TelemetryRecorder}. Segments are
+ * mapped read-only and visited in place, only the segment headers are kept on
+ * the heap. A scan binary searches the block index of a segment and decodes
+ * from the block holding its start time. Segments still being written are
+ * read up to the record count found when they are mapped.
+ */
+public class TelemetryReader {
+
+	private final File directory;
+
+	public TelemetryReader(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Iterate the samples in a time range.
+	 * @param from first time in microseconds since the epoch, inclusive
+	 * @param to last time in microseconds since the epoch, inclusive
+	 * @param gripperId -1 for every gripper
+	 * @return cursor positioned before the first sample
+	 * @throws IOException
+	 */
+	public Cursor scan(long from, long to, int gripperId) throws IOException {
+		return new Cursor(segments(from, to), from, to, gripperId, 0);
+	}
+
+	/**
+	 * Iterate the first sample of every interval in a time range.
+	 * @param from first time in microseconds since the epoch, inclusive
+	 * @param to last time in microseconds since the epoch, inclusive
+	 * @param gripperId -1 for every gripper
+	 * @param interval in microseconds
+	 * @return cursor positioned before the first sample
+	 * @throws IOException
+	 */
+	public Cursor downsample(long from, long to, int gripperId, long interval) throws IOException {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("Invalid interval: " + interval);
+		}
+		return new Cursor(segments(from, to), from, to, gripperId, interval);
+	}
+
+	/**
+	 * Compute grip current statistics in a time range.
+	 * @param from first time in microseconds since the epoch, inclusive
+	 * @param to last time in microseconds since the epoch, inclusive
+	 * @param gripperId -1 for every gripper
+	 * @param gripping only samples with an object detected (gOBJ 0x01 or 0x02)
+	 * @return statistics of the current in mA
+	 * @throws IOException
+	 */
+	public CurrentStatistics currentStatistics(long from, long to, int gripperId, boolean gripping) throws IOException {
+		CurrentStatistics statistics = new CurrentStatistics();
+		Cursor cursor = scan(from, to, gripperId);
+		while (cursor.next()) {
+			if (gripping) {
+				int status = cursor.getObjectDetectionStatus();
+				if (status != 0x01 && status != 0x02) {
+					continue;
+				}
+			}
+			statistics.add(cursor.getCurrent());
+		}
+		return statistics;
+	}
+
+	/**
+	 * Returns the time range covered by the segments.
+	 * @return { first, last } in microseconds since the epoch, null without samples
+	 * @throws IOException
+	 */
+	public long[] getTimeRange() throws IOException {
+		List<Segment> segments = segments(Long.MIN_VALUE, Long.MAX_VALUE);
+		if (segments.isEmpty()) {
+			return null;
+		}
+		return new long[] { segments.get(0).baseTime, segments.get(segments.size() - 1).lastTime };
+	}
+
+	private List<Segment> segments(long from, long to) throws IOException {
+		File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+		List<Segment> segments = new ArrayList<>();
+		if (files == null) {
+			return segments;
+		}
+		Arrays.sort(files); // the name starts with the hex base time
+		for (File file : files) {
+			Segment segment = Segment.open(file);
+			if (segment != null && segment.count > 0 && segment.baseTime <= to && segment.lastTime >= from) {
+				segments.add(segment);
+			}
+		}
+		return segments;
+	}
+
+	private static class Segment {
+
+		final File file;
+		final long baseTime;
+		final long lastTime;
+		final int count;
+
+		Segment(File file, long baseTime, long lastTime, int count) {
+			this.file = file;
+			this.baseTime = baseTime;
+			this.lastTime = lastTime;
+			this.count = count;
+		}
+
+		static Segment open(File file) throws IOException {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				if (channel.size() < HEADER_SIZE) {
+					return null;
+				}
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				while (header.hasRemaining()) {
+					if (channel.read(header, header.position()) < 0) {
+						return null;
+					}
+				}
+				if (header.getInt(0) != MAGIC || header.getInt(4) != BLOCK_RECORDS) {
+					return null;
+				}
+				return new Segment(file, header.getLong(BASE_TIME), header.getLong(LAST_TIME), header.getInt(COUNT));
+			}
+		}
+
+		MappedByteBuffer map() throws IOException {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // the block index is at the end
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				return buffer;
+			}
+		}
+
+	}
+
+	/**
+	 * Flyweight over the records of a scan, the getters describe the current sample.
+	 */
+	public static class Cursor {
+
+		private final List<Segment> segments;
+		private final long from;
+		private final long to;
+		private final int gripperId;
+		private final long interval;
+
+		private int segmentIndex = -1;
+		private Segment segment;
+		private MappedByteBuffer buffer;
+		private int index; // next record
+		private int offset; // of the next record
+
+		private long nextBucket; // downsampling
+
+		// current record, decoding state
+		private long time;
+		private long value;
+
+		Cursor(List<Segment> segments, long from, long to, int gripperId, long interval) {
+			this.segments = segments;
+			this.from = from;
+			this.to = to;
+			this.gripperId = gripperId;
+			this.interval = interval;
+			this.nextBucket = from;
+		}
+
+		/**
+		 * Move to the next sample.
+		 * @return false at the end of the range
+		 * @throws IOException
+		 */
+		public boolean next() throws IOException {
+			while (true) {
+				if (buffer == null || index >= segment.count) {
+					if (!nextSegment()) {
+						return false;
+					}
+				}
+				decode();
+				if (time > to) {
+					segmentIndex = segments.size(); // times never decrease
+					buffer = null;
+					return false;
+				}
+				if (time < from) { // before the start in the first block
+					continue;
+				}
+				if (gripperId >= 0 && getGripperId() != gripperId) {
+					continue;
+				}
+				if (interval > 0) {
+					if (time < nextBucket) {
+						continue;
+					}
+					nextBucket = time - (time - from) % interval + interval;
+				}
+				return true;
+			}
+		}
+
+		private void decode() {
+			if (index % BLOCK_RECORDS == 0) { // the block starts from a zero state
+				final int entry = buffer.capacity() - (index / BLOCK_RECORDS + 1) * INDEX_ENTRY_SIZE;
+				offset = buffer.getInt(entry);
+				time = blockTime(index / BLOCK_RECORDS);
+				value = 0;
+			}
+			long delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get(offset++);
+				delta |= (b & 0x7FL) << shift;
+				shift += 7;
+			} while (b < 0);
+			time += delta;
+			final int flags = buffer.get(offset++);
+			if ((flags & ID) != 0) {
+				value = value & 0xFFFFFFFFFFL | (buffer.getShort(offset) & 0xFFFFL) << 40;
+				offset += 2;
+			}
+			for (int field = 4; field >= 0; field--) { // status down to current
+				if ((flags & 1 << (5 - field)) != 0) {
+					value = value & ~(0xFFL << (field * 8)) | (buffer.get(offset++) & 0xFFL) << (field * 8);
+				}
+			}
+			index++;
+		}
+
+		private long blockTime(int block) {
+			return segment.baseTime + (buffer.getInt(buffer.capacity() - (block + 1) * INDEX_ENTRY_SIZE + 4) & 0xFFFFFFFFL);
+		}
+
+		private boolean nextSegment() throws IOException {
+			buffer = null;
+			if (++segmentIndex >= segments.size()) {
+				return false;
+			}
+			segment = segments.get(segmentIndex);
+			buffer = segment.map();
+			index = search(from) * BLOCK_RECORDS;
+			return true;
+		}
+
+		private int search(long time) {
+			// first block starting at or after time, earlier records at or after time are in the block before
+			int low = 0;
+			int high = (segment.count + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (blockTime(mid) < time) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return Math.max(0, low - 1);
+		}
+
+		/**
+		 * Returns the sample time.
+		 * @return microseconds since the epoch
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public int getGripperId() {
+			return (int) (value >>> 40) & 0xFFFF;
+		}
+
+		public boolean isActive() { // gACT
+			return (value >>> 32 & 0b00000001) == 0b00000001;
+		}
+
+		public int getGripperStatus() { // gSTA
+			return (int) (value >>> 36) & 0b11;
+		}
+
+		public int getObjectDetectionStatus() { // gOBJ
+			return (int) (value >>> 38) & 0b11;
+		}
+
+		public int getFaultStatus() {
+			return (int) (value >>> 24) & 0xFF;
+		}
+
+		public int getPositionRequestEcho() {
+			return (int) (value >>> 16) & 0xFF;
+		}
+
+		public int getPosition() {
+			return (int) (value >>> 8) & 0xFF;
+		}
+
+		/**
+		 * Return current in mA.
+		 * @return Current in mA.
+		 */
+		public int getCurrent() {
+			return (int) (value & 0xFF) * 10;
+		}
+
+	}
+
+}
@@ -0,0 +1,317 @@
+package com.delmesoft.gripper.telemetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.delmesoft.gripper.State;
+
+/**
+ * Appends State samples to memory-mapped segment files.
+ * <p>
+ * record() never blocks: samples are copied into a lock-free ring buffer and a
+ * writer thread moves them to the current segment. When the ring buffer is
+ * full the sample is dropped and counted.
+ * <p>
+ * A segment starts with a header holding its time range and record count.
+ * Records are compressed in blocks of {@value #BLOCK_RECORDS}: a record stores
+ * the time elapsed since the previous one as a varint, a byte flagging the
+ * fields that changed and the changed fields only, so an idle gripper takes 3
+ * bytes per sample instead of 12. Every block starts from a zero state and
+ * has an entry in the block index, written backwards from the end of the
+ * segment with the block offset and first time. Times are in microseconds
+ * since the epoch and never decrease inside a segment, so a reader can binary
+ * search the index and decode a single block to reach a time.
+ */
+public class TelemetryRecorder implements AutoCloseable {
+
+	static final int MAGIC = 0x52515432; // RQT2
+	static final int HEADER_SIZE = 32;
+	static final int BLOCK_RECORDS = 256;
+	static final int INDEX_ENTRY_SIZE = 8; // data offset, time offset from the base time
+	static final int MAX_RECORD_SIZE = 5 + 1 + 2 + 5; // time varint, flags, id, status bytes
+
+	// flags of the changed fields
+	static final int ID = 1;
+	static final int STATUS = 1 << 1;
+	static final int FAULT = 1 << 2;
+	static final int ECHO = 1 << 3;
+	static final int POSITION = 1 << 4;
+	static final int CURRENT = 1 << 5;
+
+	// header offsets
+	static final int BASE_TIME = 8;
+	static final int LAST_TIME = 16;
+	static final int COUNT = 24;
+
+	static final String PREFIX = "segment-";
+	static final String SUFFIX = ".rqt";
+
+	private final File directory;
+	private final int segmentSize;
+
+	// ring buffer, multiple producers and one consumer (the writer thread)
+	private final int mask;
+	private final long[] times;
+	private final long[] values;
+	private final AtomicLongArray published;
+	private final AtomicLong claimed = new AtomicLong();
+	private volatile long consumed;
+
+	private final LongAdder dropped = new LongAdder();
+	private final AtomicLong written = new AtomicLong();
+
+	// nanoTime -> epoch conversion
+	private final long originNanos;
+	private final long originMicros;
+
+	private final Thread thread;
+	private volatile boolean running = true;
+	private volatile IOException error;
+
+	// writer thread state
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	private long baseTime;
+	private long lastTime;
+	private int count;
+	private int dataEnd;
+	private long previousValue; // last record of the block
+
+	public TelemetryRecorder(File directory) throws IOException {
+		this(directory, 4 << 20, 1 << 16);
+	}
+
+	/**
+	 * @param directory where the segments are written
+	 * @param segmentSize segment file size in bytes
+	 * @param capacity ring buffer size in samples, rounded up to a power of two
+	 * @throws IOException
+	 */
+	public TelemetryRecorder(File directory, int segmentSize, int capacity) throws IOException {
+		if (segmentSize < HEADER_SIZE + INDEX_ENTRY_SIZE + MAX_RECORD_SIZE) {
+			throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Directory '" + directory + "' could not be created.");
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.mask = size - 1;
+		this.times = new long[size];
+		this.values = new long[size];
+		this.published = new AtomicLongArray(size);
+		this.originNanos = System.nanoTime();
+		this.originMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+		this.thread = new Thread(this::run, "TelemetryRecorder");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Queue a sample, never blocks.
+	 * @param gripperId caller assigned id, 0 to 65535
+	 * @param state sampled at its timestamp, now if the timestamp was never set (0)
+	 * @return false if the sample was dropped
+	 */
+	public boolean record(int gripperId, State state) {
+		final byte[] data = state.getData();
+		final long timestamp = state.getTimestamp() != 0 ? state.getTimestamp() : System.nanoTime();
+		final long time = originMicros + (timestamp - originNanos) / 1000;
+		long sequence;
+		do {
+			sequence = claimed.get();
+			if (sequence - consumed > mask || !running) {
+				dropped.increment();
+				return false;
+			}
+		} while (!claimed.compareAndSet(sequence, sequence + 1));
+		final int index = (int) sequence & mask;
+		times[index] = time;
+		values[index] = pack(gripperId, data);
+		published.lazySet(index, sequence + 1);
+		return true;
+	}
+
+	private static long pack(int gripperId, byte[] data) {
+		return (gripperId & 0xFFFFL) << 40
+				| (data[3] & 0xFFL) << 32 // gACT, gGTO, gSTA, gOBJ
+				| (data[5] & 0xFFL) << 24 // fault
+				| (data[6] & 0xFFL) << 16 // position request echo
+				| (data[7] & 0xFFL) << 8 // position
+				| (data[8] & 0xFFL); // current
+	}
+
+	private void run() {
+		try {
+			while (running || consumed != claimed.get()) {
+				if (drain() == 0) {
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+				}
+			}
+		} catch (IOException e) {
+			error = e;
+			running = false;
+		} finally {
+			closeSegment();
+		}
+	}
+
+	private int drain() throws IOException {
+		long sequence = consumed;
+		int n = 0;
+		while (true) {
+			final int index = (int) sequence & mask;
+			if (published.get(index) != sequence + 1) {
+				break;
+			}
+			append(times[index], values[index]);
+			sequence++;
+			n++;
+		}
+		if (n > 0) {
+			consumed = sequence; // frees the slots
+			segment.putInt(COUNT, count);
+			segment.putLong(LAST_TIME, lastTime);
+			written.addAndGet(n);
+		}
+		return n;
+	}
+
+	private void append(long time, long value) throws IOException {
+		if (segment != null) {
+			if (time < lastTime) {
+				time = lastTime; // samples of concurrent pollers may arrive slightly out of order
+			}
+			final int blocks = count / BLOCK_RECORDS + 1; // with the block of this record
+			if (time - baseTime > Integer.MAX_VALUE || dataEnd + MAX_RECORD_SIZE > segmentSize - blocks * INDEX_ENTRY_SIZE) {
+				closeSegment();
+			}
+		}
+		if (segment == null) {
+			openSegment(time);
+		}
+		long previousTime = lastTime;
+		if (count % BLOCK_RECORDS == 0) { // new block, decodable on its own
+			final int entry = segmentSize - (count / BLOCK_RECORDS + 1) * INDEX_ENTRY_SIZE;
+			segment.putInt(entry, dataEnd);
+			segment.putInt(entry + 4, (int) (time - baseTime));
+			previousTime = time;
+			previousValue = 0;
+		}
+		int position = putVarint(dataEnd, time - previousTime);
+		final long changed = value ^ previousValue;
+		final int flagsPosition = position++;
+		int flags = 0;
+		if ((changed >>> 40) != 0) {
+			segment.putShort(position, (short) (value >>> 40));
+			position += 2;
+			flags |= ID;
+		}
+		for (int field = 4; field >= 0; field--) { // status down to current
+			if ((changed >>> (field * 8) & 0xFF) != 0) {
+				segment.put(position++, (byte) (value >>> (field * 8)));
+				flags |= 1 << (5 - field);
+			}
+		}
+		segment.put(flagsPosition, (byte) flags);
+		dataEnd = position;
+		previousValue = value;
+		count++;
+		lastTime = time;
+	}
+
+	private int putVarint(int position, long value) {
+		while ((value & ~0x7FL) != 0) {
+			segment.put(position++, (byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		segment.put(position++, (byte) value);
+		return position;
+	}
+
+	private void openSegment(long time) throws IOException {
+		// base time then a sequence number, for rollovers within a microsecond or a second recorder on the directory
+		for (int sequence = 0; channel == null; sequence++) {
+			File file = new File(directory, String.format("%s%016x-%04x%s", PREFIX, time, sequence, SUFFIX));
+			try {
+				channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			} catch (FileAlreadyExistsException e) { // taken, try the next sequence number
+			}
+		}
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		segment.order(ByteOrder.LITTLE_ENDIAN);
+		segment.putInt(0, MAGIC);
+		segment.putInt(4, BLOCK_RECORDS);
+		segment.putLong(BASE_TIME, time);
+		segment.putLong(LAST_TIME, time);
+		segment.putInt(COUNT, 0);
+		baseTime = time;
+		lastTime = time;
+		count = 0;
+		dataEnd = HEADER_SIZE;
+	}
+
+	private void closeSegment() {
+		if (segment != null) {
+			segment.putInt(COUNT, count);
+			segment.putLong(LAST_TIME, lastTime);
+			segment.force();
+			segment = null;
+			try {
+				channel.close();
+			} catch (IOException ignore) {
+			} finally {
+				channel = null;
+			}
+		}
+	}
+
+	/**
+	 * Write the queued samples and close the current segment.
+	 * @throws IOException if the writer thread failed
+	 */
+	@Override
+	public void close() throws IOException {
+		running = false;
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Returns the number of samples dropped because the ring buffer was full.
+	 * @return
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Returns the number of samples written to the segments.
+	 * @return
+	 */
+	public long getWritten() {
+		return written.get();
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+}
@@ -0,0 +1,127 @@
+package com.delmesoft.gripper.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * In-memory transport, every written frame is answered synchronously by a
+ * {@link Responder}, i.e. <code>new MemoryTransport(simulator::process)</code>.
+ * Used for tests and zero I/O benchmarks of the protocol code. Each write
+ * must carry one complete frame.
+ */
+public class MemoryTransport implements Transport {
+
+	/**
+	 * Device side of the link.
+	 */
+	public interface Responder {
+
+		/**
+		 * Answer a request frame.
+		 * @param frame
+		 * @param len frame length including CRC
+		 * @return response frame or null if the request is ignored
+		 */
+		byte[] process(byte[] frame, int len);
+
+	}
+
+	private final Responder responder;
+
+	private boolean open;
+	private byte[] frame = new byte[256];
+	private byte[] buffer = new byte[1024]; // responses not read yet
+	private int head;
+	private int size;
+
+	public MemoryTransport(Responder responder) {
+		this.responder = responder;
+	}
+
+	@Override
+	public synchronized void open() {
+		open = true;
+		head = 0;
+		size = 0;
+	}
+
+	@Override
+	public synchronized boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public synchronized void close() {
+		open = false;
+	}
+
+	@Override
+	public synchronized void write(byte[] data, int offset, int len) throws IOException {
+		check();
+		if (offset != 0) {
+			if (frame.length < len) {
+				frame = new byte[len];
+			}
+			System.arraycopy(data, offset, frame, 0, len);
+			data = frame;
+		}
+		byte[] response = responder.process(data, len);
+		if (response != null) {
+			if (head + size + response.length > buffer.length) {
+				System.arraycopy(buffer, head, buffer, 0, size);
+				head = 0;
+				if (size + response.length > buffer.length) {
+					byte[] tmp = new byte[Math.max(buffer.length * 2, size + response.length)];
+					System.arraycopy(buffer, 0, tmp, 0, size);
+					buffer = tmp;
+				}
+			}
+			System.arraycopy(response, 0, buffer, head + size, response.length);
+			size += response.length;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+	}
+
+	@Override
+	public synchronized int read(byte[] data, int offset, int len) throws IOException {
+		check();
+		if (size == 0) {
+			throw new SocketTimeoutException("No response");
+		}
+		int n = Math.min(len, size);
+		System.arraycopy(buffer, head, data, offset, n);
+		head += n;
+		size -= n;
+		if (size == 0) {
+			head = 0;
+		}
+		return n;
+	}
+
+	@Override
+	public synchronized int available() throws IOException {
+		check();
+		return size;
+	}
+
+	private void check() throws IOException {
+		if (!open) {
+			throw new EOFException("Disconnected");
+		}
+	}
+
+	@Override
+	public boolean isFullDuplex() {
+		return true; // responses are queued in order
+	}
+
+	@Override
+	public String getName() {
+		return "memory";
+	}
+
+}
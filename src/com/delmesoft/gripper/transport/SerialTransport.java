@@ -0,0 +1,87 @@
+package com.delmesoft.gripper.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import com.delmesoft.gripper.utils.SyncSerialPort;
+
+/**
+ * Transport over a serial port (RS-485). The response timeout starts at the
+ * worst case for the line settings and then adapts to the measured device
+ * turnaround.
+ */
+public class SerialTransport implements Transport {
+
+	private final SyncSerialPort serialPort;
+
+	public SerialTransport(String port, int baudRate) {
+		this(createSerialPort(port, baudRate));
+	}
+
+	/**
+	 * Use the given serial port, i.e. a simulated one. The line settings must be set.
+	 * @param serialPort
+	 */
+	public SerialTransport(SyncSerialPort serialPort) {
+		this.serialPort = serialPort;
+		this.serialPort.setTimeout(serialPort.getWorstCaseTimeout());
+		this.serialPort.setAdaptiveTimeout(true);
+	}
+
+	private static SyncSerialPort createSerialPort(String port, int baudRate) {
+		SyncSerialPort serialPort = new SyncSerialPort();
+		serialPort.setPort(port);
+		serialPort.setBaudRate(baudRate);
+		return serialPort;
+	}
+
+	@Override
+	public void open() throws IOException {
+		serialPort.connect();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return serialPort.isConnected();
+	}
+
+	@Override
+	public void close() {
+		serialPort.disconnect();
+	}
+
+	@Override
+	public void write(byte[] data, int offset, int len) throws IOException {
+		serialPort.writeBytes(data, offset, len, false);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		serialPort.flush();
+	}
+
+	@Override
+	public int read(byte[] data, int offset, int len) throws IOException {
+		return serialPort.read(data, offset, len);
+	}
+
+	@Override
+	public int available() throws IOException {
+		return serialPort.available();
+	}
+
+	@Override
+	public boolean isRecoverable(IOException e) {
+		return e instanceof InterruptedIOException; // no answer, the port is still usable
+	}
+
+	@Override
+	public String getName() {
+		return serialPort.getPort();
+	}
+
+	public SyncSerialPort getSerialPort() {
+		return serialPort;
+	}
+
+}
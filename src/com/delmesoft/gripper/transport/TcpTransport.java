@@ -0,0 +1,171 @@
+package com.delmesoft.gripper.transport;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocking transport over a TCP socket, i.e. a Modbus RTU over TCP gateway.
+ * Opening and closing run under a ReentrantLock, a virtual thread connecting
+ * does not pin its carrier.
+ */
+public class TcpTransport implements Transport {
+
+	private String host;
+	private int port;
+	private int timeout = 10_000; // ms
+	private int connectTimeout = 5_000; // ms
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private volatile Socket socket;
+	private InputStream is;
+	private OutputStream os;
+
+	public TcpTransport(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	@Override
+	public void open() throws IOException {
+		lock.lock();
+		try {
+			if (!isOpen()) {
+				Socket socket = new Socket();
+				try {
+					socket.connect(new InetSocketAddress(host, port), connectTimeout);
+					socket.setSoTimeout(timeout);
+					socket.setTcpNoDelay(true);
+					is = socket.getInputStream();
+					os = new BufferedOutputStream(socket.getOutputStream());
+				} catch (IOException e) {
+					socket.close();
+					throw e;
+				}
+				this.socket = socket;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		final Socket socket = this.socket;
+		return socket != null && !socket.isClosed();
+	}
+
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			if (socket != null) {
+				try {
+					socket.close();
+				} catch (Exception ignore) {
+				} finally {
+					socket = null;
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] data, int offset, int len) throws IOException {
+		os().write(data, offset, len);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		os().flush();
+	}
+
+	@Override
+	public int read(byte[] data, int offset, int len) throws IOException {
+		return is().read(data, offset, len);
+	}
+
+	@Override
+	public int available() throws IOException {
+		return is().available();
+	}
+
+	private InputStream is() throws IOException {
+		if (socket == null) {
+			throw new EOFException("Disconnected");
+		}
+		return is;
+	}
+
+	private OutputStream os() throws IOException {
+		if (socket == null) {
+			throw new EOFException("Disconnected");
+		}
+		return os;
+	}
+
+	@Override
+	public boolean isRecoverable(IOException e) {
+		return e instanceof SocketTimeoutException; // no answer, the parser resyncs the stream on the next request
+	}
+
+	@Override
+	public boolean isFullDuplex() {
+		return true;
+	}
+
+	@Override
+	public String getName() {
+		return host + ":" + port;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Set the socket read timeout, applied on open.
+	 * @param timeout in milliseconds
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * Set the maximum time to establish the connection, applied on open.
+	 * @param connectTimeout in milliseconds, 0 waits for the OS timeout
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+}
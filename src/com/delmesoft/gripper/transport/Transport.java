@@ -0,0 +1,66 @@
+package com.delmesoft.gripper.transport;
+
+import java.io.IOException;
+
+import com.delmesoft.gripper.utils.ModbusRtuParser;
+
+/**
+ * Byte link to a gripper, the Modbus RTU protocol itself lives in
+ * {@link com.delmesoft.gripper.ModbusGripper}.
+ */
+public interface Transport extends ModbusRtuParser.Source {
+
+	/**
+	 * Open the link.
+	 * @throws IOException
+	 */
+	void open() throws IOException;
+
+	/**
+	 * Check if the link is open
+	 * @return true if open
+	 */
+	boolean isOpen();
+
+	/**
+	 * Close the link.
+	 */
+	void close();
+
+	/**
+	 * Writes len bytes, they may be buffered until {@link #flush()}.
+	 * @param data
+	 * @param offset
+	 * @param len
+	 * @throws IOException
+	 */
+	void write(byte[] data, int offset, int len) throws IOException;
+
+	void flush() throws IOException;
+
+	/**
+	 * Check if the link is still usable after the given error, i.e. a read
+	 * timeout on a serial line. The gripper disconnects otherwise.
+	 * @param e
+	 * @return true to keep the link open
+	 */
+	default boolean isRecoverable(IOException e) {
+		return false;
+	}
+
+	/**
+	 * Check if requests may be written while responses are still arriving. A
+	 * half-duplex line (RS-485) must carry one request at a time.
+	 * @return true to allow pipelining
+	 */
+	default boolean isFullDuplex() {
+		return false;
+	}
+
+	/**
+	 * Returns a name for logs and metrics, i.e. the port or host:port.
+	 * @return
+	 */
+	String getName();
+
+}
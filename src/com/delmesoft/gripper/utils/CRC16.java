@@ -2,6 +2,28 @@ package com.delmesoft.gripper.utils;
 
 public class CRC16 {
 	
+	/** Initial CRC state */
+	public static final int INITIAL = 0xFFFF;
+	
+	/* Slice-by-8 tables for the reflected polynomial 0xA001, TABLE[0] is the byte-wise table */
+	private final static int[][] TABLE = new int[8][256];
+	
+	static {
+		for (int i = 0; i < 256; i++) {
+			int crc = i;
+			for (int j = 0; j < 8; j++) {
+				crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+			}
+			TABLE[0][i] = crc;
+		}
+		for (int i = 0; i < 256; i++) {
+			for (int k = 1; k < 8; k++) {
+				int crc = TABLE[k - 1][i];
+				TABLE[k][i] = (crc >>> 8) ^ TABLE[0][crc & 0xFF];
+			}
+		}
+	}
+	
 	 /* Table of CRC values for high-order byte */
     private final static short[] auchCRCHi = {
       0x00, 0xC1, 0x81, 0x40, 0x01, 0xC0, 0x80, 0x41, 0x01, 0xC0,
@@ -62,6 +84,61 @@ public class CRC16 {
       0x43, 0x83, 0x41, 0x81, 0x80, 0x40
     };
 
+	/**
+	 * Calculate the Modbus CRC without allocating.
+	 * @param data
+	 * @param offset
+	 * @param len number of bytes
+	 * @return CRC, low byte in bits 0-7 (first byte on the wire) and high byte in bits 8-15
+	 */
+	public static final int crc16(byte[] data, int offset, int len) {
+		return update(INITIAL, data, offset, len);
+	}
+
+	/**
+	 * Feed one byte into a running CRC, i.e. while a frame is being received.
+	 * @param crc running CRC, {@link #INITIAL} for a new frame
+	 * @param b
+	 * @return updated CRC
+	 */
+	public static final int update(int crc, byte b) {
+		return (crc >>> 8) ^ TABLE[0][(crc ^ b) & 0xFF];
+	}
+
+	/**
+	 * Feed a block into a running CRC. The CRC of a constant frame prefix can be
+	 * computed once and resumed with the variable bytes.
+	 * @param crc running CRC, {@link #INITIAL} for a new frame
+	 * @param data
+	 * @param offset
+	 * @param len number of bytes
+	 * @return updated CRC
+	 */
+	public static final int update(int crc, byte[] data, int offset, int len) {
+		final int[] t0 = TABLE[0], t1 = TABLE[1], t2 = TABLE[2], t3 = TABLE[3];
+		int i = offset;
+		final int end = offset + len;
+		if (len >= 8) {
+			final int[] t4 = TABLE[4], t5 = TABLE[5], t6 = TABLE[6], t7 = TABLE[7];
+			for (; i <= end - 8; i += 8) {
+				int x = crc ^ ((data[i] & 0xFF) | ((data[i + 1] & 0xFF) << 8));
+				crc = t7[x & 0xFF] ^ t6[x >>> 8] 
+					^ t5[data[i + 2] & 0xFF] ^ t4[data[i + 3] & 0xFF] 
+					^ t3[data[i + 4] & 0xFF] ^ t2[data[i + 5] & 0xFF] 
+					^ t1[data[i + 6] & 0xFF] ^ t0[data[i + 7] & 0xFF];
+			}
+		}
+		if (end - i >= 4) {
+			int x = crc ^ ((data[i] & 0xFF) | ((data[i + 1] & 0xFF) << 8));
+			crc = t3[x & 0xFF] ^ t2[x >>> 8] ^ t1[data[i + 2] & 0xFF] ^ t0[data[i + 3] & 0xFF];
+			i += 4;
+		}
+		for (; i < end; i++) {
+			crc = (crc >>> 8) ^ t0[(crc ^ data[i]) & 0xFF];
+		}
+		return crc;
+	}
+
 	public static final int[] calculateCRC(byte[] data, int offset, int len) {
 		int[] crc = { 0xFF, 0xFF };
 		int nextByte = 0;
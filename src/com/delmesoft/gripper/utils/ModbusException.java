@@ -0,0 +1,31 @@
+package com.delmesoft.gripper.utils;
+
+/**
+ * Modbus exception response sent by a slave.
+ */
+public class ModbusException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int function;
+	private final int exceptionCode;
+
+	public ModbusException(int function, int exceptionCode) {
+		super(String.format("Modbus exception 0x%02X on function 0x%02X", exceptionCode, function));
+		this.function = function;
+		this.exceptionCode = exceptionCode;
+	}
+
+	public int getFunction() {
+		return function;
+	}
+
+	/**
+	 * Exception code, i.e. 0x01 illegal function, 0x02 illegal data address.
+	 * @return
+	 */
+	public int getExceptionCode() {
+		return exceptionCode;
+	}
+
+}
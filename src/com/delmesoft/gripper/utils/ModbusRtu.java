@@ -0,0 +1,132 @@
+package com.delmesoft.gripper.utils;
+
+/**
+ * Modbus RTU frame helpers.
+ */
+public class ModbusRtu {
+
+	public static final int READ_HOLDING_REGISTERS = 0x03;
+	public static final int READ_INPUT_REGISTERS = 0x04;
+	public static final int WRITE_MULTIPLE_REGISTERS = 0x10;
+	public static final int READ_WRITE_MULTIPLE_REGISTERS = 0x17;
+
+	private ModbusRtu() {}
+
+	/**
+	 * Build a Read Holding Registers (0x03) request.
+	 * @param slaveId
+	 * @param address first register
+	 * @param quantity number of registers
+	 * @return frame with CRC
+	 */
+	public static byte[] readHoldingRegisters(int slaveId, int address, int quantity) {
+		byte[] frame = { (byte) slaveId, READ_HOLDING_REGISTERS, (byte) (address >> 8), (byte) address, (byte) (quantity >> 8), (byte) quantity, 0x00, 0x00 };
+		appendCRC(frame);
+		return frame;
+	}
+
+	/**
+	 * Build a Write Multiple Registers (0x10) request.
+	 * @param slaveId
+	 * @param address first register
+	 * @param values register bytes, big endian, even length
+	 * @return frame with CRC
+	 */
+	public static byte[] writeMultipleRegisters(int slaveId, int address, byte... values) {
+		int quantity = values.length / 2;
+		byte[] frame = new byte[9 + values.length];
+		frame[0] = (byte) slaveId;
+		frame[1] = WRITE_MULTIPLE_REGISTERS;
+		frame[2] = (byte) (address >> 8);
+		frame[3] = (byte) address;
+		frame[4] = (byte) (quantity >> 8);
+		frame[5] = (byte) quantity;
+		frame[6] = (byte) values.length;
+		System.arraycopy(values, 0, frame, 7, values.length);
+		appendCRC(frame);
+		return frame;
+	}
+
+	/**
+	 * Build the response expected for a Write Multiple Registers (0x10) request.
+	 * @param slaveId
+	 * @param address first register
+	 * @param quantity number of registers
+	 * @return frame with CRC
+	 */
+	public static byte[] writeMultipleRegistersResponse(int slaveId, int address, int quantity) {
+		byte[] frame = { (byte) slaveId, WRITE_MULTIPLE_REGISTERS, (byte) (address >> 8), (byte) address, (byte) (quantity >> 8), (byte) quantity, 0x00, 0x00 };
+		appendCRC(frame);
+		return frame;
+	}
+
+	/**
+	 * Build a Read/Write Multiple Registers (0x17) request. The device performs
+	 * the write before the read.
+	 * @param slaveId
+	 * @param readAddress first register to read
+	 * @param readQuantity number of registers to read
+	 * @param writeAddress first register to write
+	 * @param values register bytes to write, big endian, even length
+	 * @return frame with CRC
+	 */
+	public static byte[] readWriteMultipleRegisters(int slaveId, int readAddress, int readQuantity, int writeAddress, byte... values) {
+		int writeQuantity = values.length / 2;
+		byte[] frame = new byte[13 + values.length];
+		frame[0] = (byte) slaveId;
+		frame[1] = READ_WRITE_MULTIPLE_REGISTERS;
+		frame[2] = (byte) (readAddress >> 8);
+		frame[3] = (byte) readAddress;
+		frame[4] = (byte) (readQuantity >> 8);
+		frame[5] = (byte) readQuantity;
+		frame[6] = (byte) (writeAddress >> 8);
+		frame[7] = (byte) writeAddress;
+		frame[8] = (byte) (writeQuantity >> 8);
+		frame[9] = (byte) writeQuantity;
+		frame[10] = (byte) values.length;
+		System.arraycopy(values, 0, frame, 11, values.length);
+		appendCRC(frame);
+		return frame;
+	}
+
+	/**
+	 * Store the CRC of the frame in its last two bytes.
+	 * @param frame
+	 */
+	public static void appendCRC(byte[] frame) {
+		int n = frame.length;
+		int crc = CRC16.crc16(frame, 0, n - 2);
+		frame[n - 2] = (byte) crc;
+		frame[n - 1] = (byte) (crc >> 8);
+	}
+
+	/**
+	 * Store the CRC of the frame in its last two bytes, resuming from the
+	 * precomputed CRC of a constant prefix.
+	 * @param frame
+	 * @param prefixCRC CRC state after the prefix
+	 * @param prefixLength number of constant bytes at the start of the frame
+	 */
+	public static void appendCRC(byte[] frame, int prefixCRC, int prefixLength) {
+		int n = frame.length;
+		int crc = CRC16.update(prefixCRC, frame, prefixLength, n - 2 - prefixLength);
+		frame[n - 2] = (byte) crc;
+		frame[n - 1] = (byte) (crc >> 8);
+	}
+
+	/**
+	 * Check the CRC stored in the last two bytes of a frame.
+	 * @param frame
+	 * @param offset
+	 * @param len frame length including CRC
+	 * @return true if the CRC matches
+	 */
+	public static boolean checkCRC(byte[] frame, int offset, int len) {
+		if (len < 3) {
+			return false;
+		}
+		int crc = CRC16.crc16(frame, offset, len - 2);
+		return (frame[offset + len - 2] & 0xFF) == (crc & 0xFF) && (frame[offset + len - 1] & 0xFF) == ((crc >> 8) & 0xFF);
+	}
+
+}
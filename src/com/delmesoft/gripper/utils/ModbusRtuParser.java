@@ -0,0 +1,271 @@
+package com.delmesoft.gripper.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.delmesoft.gripper.metrics.GripperMetrics;
+
+/**
+ * Streaming Modbus RTU response parser. Bytes are buffered in a ring buffer,
+ * frame boundaries are found from the slave ID, the function code and the
+ * length, and every frame is validated by its CRC. Garbage is dropped one byte
+ * at a time until a valid frame is aligned again, so a stray or lost byte does
+ * not misalign the following responses. A byte count that does not fit the
+ * destination frame is taken as garbage too, a lost byte never makes the
+ * parser wait for a length that will not arrive.
+ */
+public class ModbusRtuParser {
+
+	private static final int MAX_FRAME = 256;
+
+	private final Source source;
+	private final byte[] buffer;
+	private final int mask;
+	private int head; // index of the first buffered byte
+	private int size;
+
+	private long discarded; // garbage bytes dropped
+
+	private GripperMetrics metrics;
+
+	public ModbusRtuParser(InputStream is) {
+		this(new Source() {
+			@Override
+			public int read(byte[] data, int offset, int len) throws IOException {
+				return is.read(data, offset, len);
+			}
+			@Override
+			public int available() throws IOException {
+				return is.available();
+			}
+		});
+	}
+
+	public ModbusRtuParser(SyncSerialPort serialPort) {
+		this(new Source() {
+			@Override
+			public int read(byte[] data, int offset, int len) throws IOException {
+				return serialPort.read(data, offset, len);
+			}
+			@Override
+			public int available() throws IOException {
+				return serialPort.available();
+			}
+		});
+	}
+
+	public ModbusRtuParser(Source source) {
+		this.source = source;
+		this.buffer = new byte[2 * MAX_FRAME];
+		this.mask = buffer.length - 1;
+	}
+
+	/**
+	 * Read the next valid response of the given slave and function.
+	 * @param slaveId
+	 * @param function function code of the request
+	 * @param frame destination, longer responses are dropped as garbage
+	 * @return frame length including CRC
+	 * @throws ModbusException if the slave answered with an exception response
+	 * @throws IOException on timeout or end of stream
+	 */
+	public int readFrame(int slaveId, int function, byte[] frame) throws IOException {
+		return parse(slaveId, function, frame, true);
+	}
+
+	/**
+	 * Non-blocking variant of {@link #readFrame(int, int, byte[])} for sources
+	 * that return 0 when no byte is ready, i.e. a non-blocking channel.
+	 * @param slaveId
+	 * @param function function code of the request
+	 * @param frame destination, longer responses are dropped as garbage
+	 * @return frame length including CRC, -1 if no complete frame is buffered yet
+	 * @throws ModbusException if the slave answered with an exception response
+	 * @throws IOException on end of stream
+	 */
+	public int pollFrame(int slaveId, int function, byte[] frame) throws IOException {
+		return parse(slaveId, function, frame, false);
+	}
+
+	private int parse(int slaveId, int function, byte[] frame, boolean block) throws IOException {
+		while (true) {
+			if (!fill(2, block)) {
+				return -1;
+			}
+			int fc = get(1);
+			if (get(0) != (slaveId & 0xFF) || (fc != function && fc != (function | 0x80))) {
+				skip(1);
+				continue;
+			}
+			int len;
+			if (fc != function) {
+				len = 5; // exception response
+			} else {
+				switch (function) {
+				case ModbusRtu.READ_HOLDING_REGISTERS:
+				case ModbusRtu.READ_INPUT_REGISTERS:
+				case ModbusRtu.READ_WRITE_MULTIPLE_REGISTERS:
+					if (!fill(3, block)) {
+						return -1;
+					}
+					if ((get(2) & 1) != 0) {
+						skip(1); // registers are 2 bytes each, misaligned
+						continue;
+					}
+					len = 5 + get(2);
+					break;
+				default: // 0x05, 0x06, 0x0F, 0x10
+					len = 8;
+				}
+			}
+			if (len > frame.length) {
+				skip(1); // byte count of a misaligned frame, checked before waiting for it
+				continue;
+			}
+			if (!fill(len, block)) {
+				return -1;
+			}
+			if (!checkCRC(len)) {
+				if (metrics != null) {
+					metrics.crcError();
+				}
+				skip(1);
+				continue;
+			}
+			if (fc != function) {
+				int code = get(2);
+				consume(len);
+				throw new ModbusException(function, code);
+			}
+			copy(frame, len);
+			consume(len);
+			return len;
+		}
+	}
+
+	/**
+	 * Read raw bytes, starting with the buffered ones.
+	 * @param data
+	 * @param offset
+	 * @param len
+	 * @throws IOException
+	 */
+	public void readBytes(byte[] data, int offset, int len) throws IOException {
+		fill(Math.min(len, buffer.length), true);
+		int n = Math.min(len, size);
+		copyTo(data, offset, n);
+		consume(n);
+		while (n < len) {
+			int count = source.read(data, offset + n, len - n);
+			if (count < 0)
+				throw new EOFException();
+			n += count;
+		}
+	}
+
+	/**
+	 * Discard the buffered bytes and the bytes already received by the source,
+	 * i.e. late responses of a timed out request.
+	 * @throws IOException
+	 */
+	public void clear() throws IOException {
+		discarded += size;
+		head = 0;
+		size = 0;
+		int available;
+		byte[] garbage = null;
+		while ((available = source.available()) > 0) {
+			if (garbage == null) {
+				garbage = new byte[MAX_FRAME];
+			}
+			int n = source.read(garbage, 0, Math.min(available, garbage.length));
+			if (n <= 0) {
+				break;
+			}
+			discarded += n;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes dropped while resynchronizing.
+	 * @return
+	 */
+	public long getDiscarded() {
+		return discarded;
+	}
+
+	public GripperMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Count CRC errors in the given metrics.
+	 * @param metrics null to disable
+	 */
+	public void setMetrics(GripperMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	private boolean fill(int len, boolean block) throws IOException {
+		while (size < len) {
+			int tail = (head + size) & mask;
+			int free = Math.min(buffer.length - size, buffer.length - tail);
+			int count = source.read(buffer, tail, free);
+			if (count < 0)
+				throw new EOFException();
+			if (count == 0 && !block)
+				return false;
+			size += count;
+		}
+		return true;
+	}
+
+	private int get(int index) {
+		return buffer[(head + index) & mask] & 0xFF;
+	}
+
+	private boolean checkCRC(int len) {
+		int n = len - 2;
+		int first = Math.min(n, buffer.length - head);
+		int crc = CRC16.update(CRC16.INITIAL, buffer, head, first);
+		if (first < n) {
+			crc = CRC16.update(crc, buffer, 0, n - first);
+		}
+		return get(n) == (crc & 0xFF) && get(n + 1) == ((crc >> 8) & 0xFF);
+	}
+
+	private void copy(byte[] frame, int len) {
+		copyTo(frame, 0, len);
+	}
+
+	private void copyTo(byte[] data, int offset, int len) {
+		int first = Math.min(len, buffer.length - head);
+		System.arraycopy(buffer, head, data, offset, first);
+		if (first < len) {
+			System.arraycopy(buffer, 0, data, offset + first, len - first);
+		}
+	}
+
+	private void skip(int len) {
+		discarded += len;
+		consume(len);
+	}
+
+	private void consume(int len) {
+		head = (head + len) & mask;
+		size -= len;
+	}
+
+	/**
+	 * Byte source of the parser.
+	 */
+	public interface Source {
+
+		int read(byte[] data, int offset, int len) throws IOException;
+
+		int available() throws IOException;
+
+	}
+
+}
@@ -3,9 +3,35 @@ package com.delmesoft.gripper.utils;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Blocking serial port with Modbus RTU line timing. The character time, the
+ * inter-frame silence (3.5 characters) and the frame transmit times are derived
+ * from the baud rate, data bits, parity and stop bits. A frame is only written
+ * after the line has been silent for 3.5 characters, at least 1.75 ms above
+ * 19200 baud as the Modbus serial line specification fixes it there.
+ * <p>
+ * With the adaptive timeout the read timeout follows a percentile of the
+ * measured turnaround, the time from the end of a request to the first byte of
+ * its response, so a lost response is detected in a few milliseconds. The
+ * configured timeout is the upper bound and is used until enough turnarounds
+ * are measured.
+ */
 public class SyncSerialPort {
+
+	private static final int MAX_FRAME = 256; // RTU ADU size
+	private static final int DEVICE_ALLOWANCE = 20; // ms, device response time before any is measured
+	private static final int WINDOW = 64; // turnaround samples
+	private static final int MIN_SAMPLES = 8; // also the update interval
+	private static final int FIXED_TIMING_BAUD_RATE = 19200; // fixed t3.5 above
+	private static final long FIXED_INTER_FRAME_DELAY = 1_750_000; // ns
 	
 	/**
 	 * Note for Linux users: Serial port access is limited to certain users and groups in Linux. To enable user access, you must open a terminal and enter the following commands before jSerialComm will be able to access the ports on your system. Don't worry if some of the commands fail. All of these groups may not exist on every Linux distro. (Note, this process must only be done once for each user):
@@ -15,7 +41,22 @@ public class SyncSerialPort {
 	 * sudo usermod -a -G tty <username>
 	 */
 
-	private int timeout;
+	private int timeout; // ms
+
+	private boolean adaptiveTimeout;
+	private double timeoutPercentile = 0.99;
+	private int minTimeout = 5; // ms
+	private volatile int responseTimeout; // ms, 0 -> not measured yet
+
+	// line state, written by the readers and the writers
+	private final ReentrantLock lineLock = new ReentrantLock(); // never held while blocked on the port
+	private long lineIdle; // nanoTime the inter-frame silence ends
+	private long requestEnd; // nanoTime the last request left the line
+	private boolean awaitingResponse;
+	private final long[] turnarounds = new long[WINDOW]; // ns, ring buffer
+	private final long[] sorted = new long[WINDOW];
+	private int turnaroundCount;
+	private int turnaroundIndex;
 
 	private String port;
 	private int baudRate;
@@ -63,7 +104,7 @@ public class SyncSerialPort {
 			// In this mode, a call to any of the read() or readBytes() methods will block
 			// until the number of milliseconds specified by the newReadTimeout parameter
 			// has elapsed or at least 1 byte of data can be read.
-			serialPort.setComPortTimeouts(com.fazecast.jSerialComm.SerialPort.TIMEOUT_READ_SEMI_BLOCKING | com.fazecast.jSerialComm.SerialPort.TIMEOUT_WRITE_BLOCKING, timeout, timeout);
+			serialPort.setComPortTimeouts(com.fazecast.jSerialComm.SerialPort.TIMEOUT_READ_SEMI_BLOCKING | com.fazecast.jSerialComm.SerialPort.TIMEOUT_WRITE_BLOCKING, getResponseTimeout(), timeout);
 
 			if (serialPort.openPort()) { // open port
 				os = serialPort.getOutputStream();
@@ -151,10 +192,50 @@ public class SyncSerialPort {
 	 * @throws Exception 
 	 */
 	public synchronized void writeBytes(byte[] data, int offset, int len, boolean flush) throws IOException {
-		if (serialPort != null) {
-			os.write(data, offset, len);
-			if (flush)
-				os.flush();
+		if (isConnected()) {
+			awaitSilence();
+			writePort(data, offset, len, flush);
+			final long end = System.nanoTime() + getFrameTime(len);
+			final long interFrameDelay = getInterFrameDelay();
+			lineLock.lock();
+			try {
+				requestEnd = end;
+				lineIdle = end + interFrameDelay;
+				awaitingResponse = true;
+			} finally {
+				lineLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Write to the port without line timing.
+	 * @param data
+	 * @param offset
+	 * @param len
+	 * @param flush
+	 * @throws IOException
+	 */
+	protected void writePort(byte[] data, int offset, int len, boolean flush) throws IOException {
+		os.write(data, offset, len);
+		if (flush)
+			os.flush();
+	}
+
+	private void awaitSilence() {
+		// RTU frames are delimited by 3.5 characters of silence
+		long remaining;
+		while ((remaining = lineIdle() - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+		}
+	}
+
+	private long lineIdle() {
+		lineLock.lock();
+		try {
+			return lineIdle;
+		} finally {
+			lineLock.unlock();
 		}
 	}
 
@@ -176,7 +257,7 @@ public class SyncSerialPort {
 	public synchronized void readBytes(byte[] data, int offset, int len) throws IOException {
 		int n = 0;
 		while (n < len) {
-			int count = is.read(data, offset + n, len - n);
+			int count = read(data, offset + n, len - n);
 			if (count < 0)
 				throw new EOFException();
 			n += count;
@@ -188,8 +269,102 @@ public class SyncSerialPort {
 	}
 
 	public int read(byte[] data, int offset, int len) throws IOException {
+		final int n;
+		try {
+			n = readPort(data, offset, len);
+		} catch (InterruptedIOException e) {
+			timedOut();
+			throw e;
+		}
+		if (n > 0) {
+			received(n);
+		}
+		return n;
+	}
+
+	/**
+	 * Read from the port without line timing.
+	 * @param data
+	 * @param offset
+	 * @param len
+	 * @return number of bytes read, -1 at the end of the stream
+	 * @throws IOException
+	 */
+	protected int readPort(byte[] data, int offset, int len) throws IOException {
 		return is.read(data, offset, len);
 	}
+
+	private void received(int n) {
+		final long now = System.nanoTime();
+		final long frameTime = getFrameTime(n);
+		final long interFrameDelay = getInterFrameDelay();
+		int responseTimeout = 0;
+		lineLock.lock();
+		try {
+			if (awaitingResponse) {
+				awaitingResponse = false;
+				// the first byte started arriving n characters ago
+				responseTimeout = recordTurnaround(Math.max(0, now - frameTime - requestEnd));
+			}
+			lineIdle = now + interFrameDelay;
+		} finally {
+			lineLock.unlock();
+		}
+		if (responseTimeout > 0) {
+			updateResponseTimeout(responseTimeout); // outside the line lock, applyTimeout() takes the monitor
+		}
+	}
+
+	/**
+	 * Add a turnaround sample, the line lock is held.
+	 * @param turnaround in nanoseconds
+	 * @return new adaptive timeout in milliseconds, 0 if not updated
+	 */
+	private int recordTurnaround(long turnaround) {
+		turnarounds[turnaroundIndex] = turnaround;
+		turnaroundIndex = (turnaroundIndex + 1) % WINDOW;
+		if (turnaroundCount < WINDOW) {
+			turnaroundCount++;
+		}
+		if (adaptiveTimeout && turnaroundCount >= MIN_SAMPLES && turnaroundIndex % MIN_SAMPLES == 0) { // every 8 samples
+			System.arraycopy(turnarounds, 0, sorted, 0, turnaroundCount);
+			Arrays.sort(sorted, 0, turnaroundCount);
+			final long percentile = sorted[(int) Math.ceil(timeoutPercentile * turnaroundCount) - 1];
+			final long millis = TimeUnit.NANOSECONDS.toMillis(2 * percentile + 999_999); // twice the percentile, rounded up
+			return (int) Math.max(minTimeout, Math.min(timeout, millis));
+		}
+		return 0;
+	}
+
+	private void timedOut() {
+		lineLock.lock();
+		try {
+			awaitingResponse = false; // a late response would be measured too long
+		} finally {
+			lineLock.unlock();
+		}
+		if (adaptiveTimeout && responseTimeout > 0) {
+			// the device may have slowed down, back off until it is measured again
+			updateResponseTimeout(Math.min(timeout, 2 * responseTimeout));
+		}
+	}
+
+	private synchronized void updateResponseTimeout(int responseTimeout) {
+		if (this.responseTimeout != responseTimeout) {
+			this.responseTimeout = responseTimeout;
+			applyTimeout(responseTimeout);
+		}
+	}
+
+	/**
+	 * Apply a new read timeout to the open port.
+	 * @param timeout in milliseconds
+	 */
+	protected synchronized void applyTimeout(int timeout) {
+		if (serialPort != null) {
+			serialPort.setComPortTimeouts(com.fazecast.jSerialComm.SerialPort.TIMEOUT_READ_SEMI_BLOCKING | com.fazecast.jSerialComm.SerialPort.TIMEOUT_WRITE_BLOCKING, timeout, this.timeout);
+		}
+	}
 	
 	public int read() throws IOException {
 		return is.read();
@@ -219,8 +394,116 @@ public class SyncSerialPort {
 		return timeout;
 	}
 
+	/**
+	 * Set the read and write timeout. With the adaptive timeout this is the
+	 * upper bound of the read timeout.
+	 * @param timeout in milliseconds
+	 */
 	public void setTimeout(int timeout) {
 		this.timeout = timeout;
+		this.responseTimeout = 0;
+	}
+
+	/**
+	 * Returns the read timeout in use.
+	 * @return in milliseconds
+	 */
+	public int getResponseTimeout() {
+		final int responseTimeout = this.responseTimeout;
+		return responseTimeout > 0 ? responseTimeout : timeout;
+	}
+
+	public boolean isAdaptiveTimeout() {
+		return adaptiveTimeout;
+	}
+
+	/**
+	 * Derive the read timeout from the measured turnarounds.
+	 * @param adaptiveTimeout
+	 */
+	public void setAdaptiveTimeout(boolean adaptiveTimeout) {
+		this.adaptiveTimeout = adaptiveTimeout;
+	}
+
+	public double getTimeoutPercentile() {
+		return timeoutPercentile;
+	}
+
+	/**
+	 * Set the turnaround percentile the adaptive timeout is twice of.
+	 * @param timeoutPercentile 0.99 -> p99
+	 */
+	public void setTimeoutPercentile(double timeoutPercentile) {
+		if (timeoutPercentile <= 0.0 || timeoutPercentile > 1.0) {
+			throw new IllegalArgumentException("Invalid percentile: " + timeoutPercentile);
+		}
+		this.timeoutPercentile = timeoutPercentile;
+	}
+
+	public int getMinTimeout() {
+		return minTimeout;
+	}
+
+	/**
+	 * Set the lower bound of the adaptive timeout, covers the scheduling and
+	 * USB adapter latency of the host.
+	 * @param minTimeout in milliseconds
+	 */
+	public void setMinTimeout(int minTimeout) {
+		this.minTimeout = minTimeout;
+	}
+
+	/**
+	 * Returns the time to transmit one character: start bit, data bits, parity and stop bits.
+	 * @return in nanoseconds
+	 */
+	public long getCharacterTime() {
+		int halfBits = 2 * (1 + numDataBits); // start and data bits
+		if (parity != com.fazecast.jSerialComm.SerialPort.NO_PARITY) {
+			halfBits += 2;
+		}
+		switch (numStopBits) {
+		case com.fazecast.jSerialComm.SerialPort.ONE_POINT_FIVE_STOP_BITS:
+			halfBits += 3;
+			break;
+		case com.fazecast.jSerialComm.SerialPort.TWO_STOP_BITS:
+			halfBits += 4;
+			break;
+		default:
+			halfBits += 2;
+		}
+		return TimeUnit.SECONDS.toNanos(halfBits) / (2L * baudRate);
+	}
+
+	/**
+	 * Returns the RTU inter-frame silence, 3.5 character times up to 19200
+	 * baud and 1.75 ms above.
+	 * @return in nanoseconds
+	 */
+	public long getInterFrameDelay() {
+		if (baudRate > FIXED_TIMING_BAUD_RATE) {
+			return FIXED_INTER_FRAME_DELAY;
+		}
+		return 7 * getCharacterTime() / 2;
+	}
+
+	/**
+	 * Returns the time to transmit a frame.
+	 * @param length frame length in bytes
+	 * @return in nanoseconds
+	 */
+	public long getFrameTime(int length) {
+		return length * getCharacterTime();
+	}
+
+	/**
+	 * Returns a timeout that covers a maximum size request and response on
+	 * this line plus the response time of the device.
+	 * @return in milliseconds
+	 */
+	public int getWorstCaseTimeout() {
+		final long nanos = 2 * (getFrameTime(MAX_FRAME) + getInterFrameDelay());
+		return (int) TimeUnit.NANOSECONDS.toMillis(nanos + 999_999) + DEVICE_ALLOWANCE;
 	}
 
 	/**
@@ -306,8 +589,10 @@ public class SyncSerialPort {
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
-		builder.append("SerialPort [readTimeout=");
+		builder.append("SerialPort [timeout=");
 		builder.append(timeout);
+		builder.append(", responseTimeout=");
+		builder.append(getResponseTimeout());
 		builder.append(", port=");
 		builder.append(port);
 		builder.append(", baudRate=");
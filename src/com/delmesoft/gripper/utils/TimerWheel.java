@@ -0,0 +1,142 @@
+package com.delmesoft.gripper.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel. Not thread safe, it must be driven by a single thread
+ * calling {@link #advance(long)}.
+ */
+public class TimerWheel {
+
+	private final long tickDuration; // ns
+	private final Timeout[] wheel;
+	private final int mask;
+	private final long startTime;
+
+	private long tick;
+
+	public TimerWheel() {
+		this(10, TimeUnit.MILLISECONDS, 512);
+	}
+
+	/**
+	 * @param tickDuration resolution of the timer
+	 * @param unit
+	 * @param ticksPerWheel number of buckets, rounded up to a power of two
+	 */
+	public TimerWheel(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+		this.tickDuration = unit.toNanos(tickDuration);
+		int n = 1;
+		while (n < ticksPerWheel) {
+			n <<= 1;
+		}
+		this.wheel = new Timeout[n];
+		this.mask = n - 1;
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * Schedule a task to run once after the given delay.
+	 * @param delay
+	 * @param unit
+	 * @param task
+	 * @return Timeout handle to cancel the task
+	 */
+	public Timeout schedule(long delay, TimeUnit unit, Runnable task) {
+		long deadline = System.nanoTime() - startTime + unit.toNanos(delay);
+		long deadlineTick = (deadline + tickDuration - 1) / tickDuration;
+		if (deadlineTick <= tick) {
+			deadlineTick = tick + 1;
+		}
+		Timeout timeout = new Timeout(task, deadlineTick);
+		int index = (int) (deadlineTick & mask);
+		timeout.bucket = index;
+		timeout.next = wheel[index];
+		if (wheel[index] != null) {
+			wheel[index].prev = timeout;
+		}
+		wheel[index] = timeout;
+		return timeout;
+	}
+
+	/**
+	 * Run every task whose deadline has been reached.
+	 * @param now System.nanoTime()
+	 */
+	public void advance(long now) {
+		long currentTick = (now - startTime) / tickDuration;
+		while (tick < currentTick) {
+			tick++;
+			Timeout timeout = wheel[(int) (tick & mask)];
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.deadlineTick <= tick) {
+					remove(timeout);
+					timeout.expired = true;
+					timeout.task.run();
+				}
+				timeout = next;
+			}
+		}
+	}
+
+	/**
+	 * Time until the next tick.
+	 * @param now System.nanoTime()
+	 * @return delay in nanoseconds
+	 */
+	public long nextTickDelay(long now) {
+		return (tick + 1) * tickDuration - (now - startTime);
+	}
+
+	private void remove(Timeout timeout) {
+		if (timeout.prev != null) {
+			timeout.prev.next = timeout.next;
+		} else if (wheel[timeout.bucket] == timeout) {
+			wheel[timeout.bucket] = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.prev = timeout.prev;
+		}
+		timeout.prev = null;
+		timeout.next = null;
+	}
+
+	public class Timeout {
+
+		private final Runnable task;
+		private final long deadlineTick;
+
+		private int bucket;
+		private Timeout prev;
+		private Timeout next;
+
+		private boolean expired;
+		private boolean cancelled;
+
+		private Timeout(Runnable task, long deadlineTick) {
+			this.task = task;
+			this.deadlineTick = deadlineTick;
+		}
+
+		/**
+		 * Cancel the task. Must be called from the thread driving the wheel.
+		 */
+		public void cancel() {
+			if (!expired && !cancelled) {
+				cancelled = true;
+				remove(this);
+			}
+		}
+
+		public boolean isExpired() {
+			return expired;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+	}
+
+}
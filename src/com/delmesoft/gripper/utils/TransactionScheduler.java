@@ -0,0 +1,197 @@
+package com.delmesoft.gripper.utils;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.delmesoft.gripper.metrics.LatencyHistogram;
+
+/**
+ * Orders the transactions of one connection by priority class. A single
+ * transaction runs at a time; when it ends the oldest waiter of the highest
+ * class goes next. A queued command therefore waits for the transaction in
+ * progress and the queued ones of a higher or equal class only, never for the
+ * queued ones of a lower class.
+ * <p>
+ * The owner may start nested transactions without queuing again. Without
+ * waiters a turn is taken with a single compare-and-set. Waiters block on a
+ * Condition, not a monitor, so virtual threads do not pin their carrier.
+ */
+public class TransactionScheduler {
+
+	public enum Priority {
+		/** Safety release, ahead of everything else */
+		EMERGENCY,
+		/** Pose commands */
+		MOTION,
+		/** Status reads */
+		STATUS,
+		/** Connection, activation and raw access */
+		DIAGNOSTICS
+	}
+
+	private static final Priority[] PRIORITIES = Priority.values();
+
+	private final ArrayDeque<Thread>[] queues;
+	private final LatencyHistogram[] waitTimes;
+	private final long[] granted; // written by the owner
+	private final int[] maxQueueDepth;
+
+	private final ReentrantLock lock = new ReentrantLock(); // guards the queues
+	private final Condition turn = lock.newCondition();
+
+	private final AtomicReference<Thread> owner = new AtomicReference<>();
+	private volatile int waiters;
+	private int holds; // owner only
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public TransactionScheduler() {
+		queues = new ArrayDeque[PRIORITIES.length];
+		waitTimes = new LatencyHistogram[PRIORITIES.length];
+		for (int i = 0; i < PRIORITIES.length; i++) {
+			queues[i] = new ArrayDeque<>();
+			waitTimes[i] = new LatencyHistogram();
+		}
+		granted = new long[PRIORITIES.length];
+		maxQueueDepth = new int[PRIORITIES.length];
+	}
+
+	/**
+	 * Wait for the turn of the calling thread.
+	 * @param priority class of the transaction
+	 * @throws InterruptedException the thread leaves the queue
+	 */
+	public void acquire(Priority priority) throws InterruptedException {
+		final Thread thread = Thread.currentThread();
+		if (owner.get() == thread) {
+			holds++;
+			return;
+		}
+		final int index = priority.ordinal();
+		if (waiters == 0 && owner.compareAndSet(null, thread)) { // uncontended
+			holds = 1;
+			granted[index]++;
+			waitTimes[index].record(0);
+			return;
+		}
+		final long start = System.nanoTime();
+		lock.lock();
+		try {
+			final ArrayDeque<Thread> queue = queues[index];
+			queue.add(thread);
+			waiters++;
+			maxQueueDepth[index] = Math.max(maxQueueDepth[index], queue.size());
+			try {
+				// waiters is written before owner is read here, and release() writes owner
+				// before reading waiters, so one of them sees the other
+				while (next() != thread || !owner.compareAndSet(null, thread)) {
+					turn.await();
+				}
+			} catch (InterruptedException e) {
+				queue.remove(thread);
+				waiters--;
+				turn.signalAll(); // another waiter may be next now
+				throw e;
+			}
+			queue.poll();
+			waiters--;
+		} finally {
+			lock.unlock();
+		}
+		holds = 1;
+		granted[index]++;
+		waitTimes[index].record(System.nanoTime() - start);
+	}
+
+	private Thread next() {
+		for (ArrayDeque<Thread> queue : queues) {
+			if (!queue.isEmpty()) {
+				return queue.peek();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * End the transaction of the calling thread.
+	 */
+	public void release() {
+		if (owner.get() != Thread.currentThread()) {
+			throw new IllegalStateException("Not the owner");
+		}
+		if (--holds == 0) {
+			owner.set(null);
+			if (waiters > 0) {
+				lock.lock();
+				try {
+					turn.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of threads waiting in a class.
+	 * @param priority
+	 * @return
+	 */
+	public int getQueueDepth(Priority priority) {
+		lock.lock();
+		try {
+			return queues[priority.ordinal()].size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the highest number of threads that waited in a class at once.
+	 * @param priority
+	 * @return
+	 */
+	public int getMaxQueueDepth(Priority priority) {
+		lock.lock();
+		try {
+			return maxQueueDepth[priority.ordinal()];
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of transactions started in a class.
+	 * @param priority
+	 * @return
+	 */
+	public long getGranted(Priority priority) {
+		return granted[priority.ordinal()];
+	}
+
+	/**
+	 * Returns the time the transactions of a class waited for their turn.
+	 * @param priority
+	 * @return histogram in nanoseconds
+	 */
+	public LatencyHistogram getWaitTime(Priority priority) {
+		return waitTimes[priority.ordinal()];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("TransactionScheduler [");
+		for (Priority priority : PRIORITIES) {
+			LatencyHistogram waitTime = waitTimes[priority.ordinal()];
+			if (priority.ordinal() > 0) {
+				sb.append(", ");
+			}
+			sb.append(priority).append("={queued=").append(getQueueDepth(priority))
+					.append(", granted=").append(granted[priority.ordinal()])
+					.append(", p99Wait=").append(waitTime.getPercentile(0.99) / 1000).append("us}");
+		}
+		return sb.append(']').toString();
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.delmesoft.gripper;
+
+import java.lang.management.ManagementFactory;
+
+import com.delmesoft.gripper.transport.MemoryTransport;
+import com.delmesoft.gripper.utils.ModbusRtu;
+
+/**
+ * Checks that pose(byte, byte, byte) and getState(State) do not allocate once
+ * warm. The device side answers with preallocated frames so only the driver
+ * allocations are counted.
+ */
+public class AllocationTest {
+
+	private static final int WARMUP = 200_000;
+	private static final int ITERATIONS = 100_000;
+	private static final long MAX_BYTES = 1024; // measurement noise, far below one byte per request
+
+	public static void main(String[] args) throws Exception {
+
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threadBean.isThreadAllocatedMemorySupported()) {
+			System.out.println("Thread allocation counter not supported, skipped");
+			return;
+		}
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		final byte[] status = { 0x09, 0x03, 0x06, 0x39, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00 }; // gACT, gGTO, gSTA = 0x03
+		ModbusRtu.appendCRC(status);
+		ModbusGripper gripper = new ModbusGripper(new MemoryTransport((frame, len) -> {
+			if (frame[1] == ModbusRtu.WRITE_MULTIPLE_REGISTERS) {
+				return Gripper.RESPONSE_ACK;
+			}
+			return frame[5] == 0x01 ? Gripper.ACTIVATION_COMPLETE : status;
+		}));
+		gripper.connect();
+
+		State state = new State(new byte[11]);
+		loop(gripper, state, WARMUP);
+
+		final long threadId = Thread.currentThread().getId();
+		final long before = threadBean.getThreadAllocatedBytes(threadId);
+		loop(gripper, state, ITERATIONS);
+		final long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+		gripper.disconnect();
+
+		System.out.println(allocated + " bytes allocated by " + 2 * ITERATIONS + " requests");
+		if (allocated > MAX_BYTES) {
+			throw new RuntimeException("Hot path allocates: " + allocated + " bytes");
+		}
+	}
+
+	private static void loop(ModbusGripper gripper, State state, int iterations) throws Exception {
+		for (int i = 0; i < iterations; i++) {
+			gripper.pose((byte) i, (byte) 0xFF, (byte) 0x80);
+			gripper.getState(state);
+		}
+	}
+
+}
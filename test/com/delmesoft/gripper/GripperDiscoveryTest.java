@@ -0,0 +1,73 @@
+package com.delmesoft.gripper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.delmesoft.gripper.sim.GripperSimulator;
+import com.delmesoft.gripper.utils.ModbusRtu;
+import com.delmesoft.gripper.utils.SyncSerialPort;
+
+/**
+ * Discovery over 16 simulated ports: 8 grippers, half of them activated, and
+ * 8 silent ports (another slave ID). Every gripper must be found with its
+ * activation state and none may be touched by the probe.
+ */
+public class GripperDiscoveryTest {
+
+	public static void main(String[] args) throws Exception {
+
+		final Map<String, GripperSimulator> simulators = new HashMap<>();
+		List<String> ports = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			GripperSimulator simulator = new GripperSimulator();
+			if (i % 2 == 1) {
+				simulator.setSlaveId(0x05); // silent to the probe
+			} else if (i % 4 == 0) {
+				simulator.activate();
+			}
+			simulator.setActivationDelay(60, TimeUnit.SECONDS); // a reactivation would stay visible
+			String port = "SIM" + i;
+			simulators.put(port, simulator);
+			ports.add(port);
+		}
+
+		GripperDiscovery discovery = new GripperDiscovery() {
+			@Override
+			protected SyncSerialPort createSerialPort(String port) {
+				return simulators.get(port).createSerialPort();
+			}
+		};
+
+		long start = System.nanoTime();
+		List<GripperDiscovery.Device> devices = discovery.discover(ports);
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		for (GripperDiscovery.Device device : devices) {
+			System.out.println(device);
+		}
+		System.out.println(devices.size() + " grippers found on " + ports.size() + " ports in " + elapsed + " ms");
+
+		if (devices.size() != 8) {
+			throw new RuntimeException("Expected 8 grippers, found " + devices.size());
+		}
+		for (GripperDiscovery.Device device : devices) {
+			int i = Integer.parseInt(device.getPort().substring(3));
+			if (i % 2 == 1 || device.isActivated() != (i % 4 == 0)) {
+				throw new RuntimeException("Unexpected device: " + device);
+			}
+			if (!device.createGripper().isWarmAttach()) {
+				throw new RuntimeException("Warm attach not set: " + device);
+			}
+		}
+		for (int i = 0; i < 16; i += 2) {
+			byte[] frame = ModbusRtu.readHoldingRegisters(Gripper.DEFAULT_SLAVE_ID, Gripper.STATUS_REGISTER, 3);
+			State state = new State(simulators.get("SIM" + i).process(frame, frame.length));
+			if (state.getGripperStatus() != (i % 4 == 0 ? 0x03 : 0x00)) {
+				throw new RuntimeException("Gripper SIM" + i + " touched by the probe: " + state);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package com.delmesoft.gripper;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.delmesoft.gripper.sim.GripperSimulator;
+
+/**
+ * Pipelined requests over TCP: a single call at depth 1 must complete without
+ * any further traffic, and a full pipeline must be flushed by the call that
+ * fills it.
+ */
+public class PipelineTest {
+
+	public static void main(String[] args) throws Exception {
+
+		GripperSimulator simulator = new GripperSimulator();
+		simulator.setActivationDelay(0, TimeUnit.MILLISECONDS);
+		simulator.listen(0);
+
+		TcpGripper gripper = new TcpGripper("localhost", simulator.getPort());
+		gripper.connect();
+
+		CompletableFuture<Void> pose = gripper.pipelinePose((byte) 0x80, (byte) 0xFF, (byte) 0x00);
+		pose.get(1, TimeUnit.SECONDS);
+		System.out.println("depth 1: pose acknowledged with no further traffic");
+
+		gripper.setPipelineDepth(3);
+		CompletableFuture<Void> first = gripper.pipelinePose((byte) 0x00, (byte) 0xFF, (byte) 0x00);
+		CompletableFuture<State> second = gripper.pipelineGetState();
+		CompletableFuture<State> third = gripper.pipelineGetState();
+		if (!first.isDone()) {
+			throw new RuntimeException("Full pipeline not flushed");
+		}
+		gripper.sync();
+		System.out.println("depth 3: " + second.get(0, TimeUnit.SECONDS) + ", " + third.get(0, TimeUnit.SECONDS));
+
+		gripper.disconnect();
+		simulator.close();
+	}
+
+}
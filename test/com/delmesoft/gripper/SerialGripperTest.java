@@ -1,19 +1,32 @@
 package com.delmesoft.gripper;
 
+import java.util.List;
+
 public class SerialGripperTest {
 	
 	public static void main(String[] args) throws Exception {
 		
-		Gripper gripper = new SerialGripper("COM16");
+		Gripper gripper;
+		if (args.length > 0) {
+			gripper = new SerialGripper(args[0]);
+		} else {
+			List<GripperDiscovery.Device> devices = new GripperDiscovery().discover();
+			if (devices.isEmpty()) {
+				System.out.println("No gripper found");
+				return;
+			}
+			System.out.println(devices.get(0));
+			gripper = devices.get(0).createGripper();
+		}
 		gripper.connect();
 		while(true) {
-			System.out.println("open");
+			System.out.println("close");
 			gripper.pose(1.0, 1.0, 0.0);
 			
 			System.out.println(gripper.getState());
 			Thread.sleep(500);
 						
-			System.out.println("close");
+			System.out.println("open");
 			gripper.pose(0.0, 1.0, 0.0);
 			System.out.println(gripper.getState());
 			Thread.sleep(500);
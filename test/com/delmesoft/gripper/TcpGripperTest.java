@@ -7,13 +7,13 @@ public class TcpGripperTest {
 		Gripper gripper = new TcpGripper("192.168.10.114");
 		gripper.connect();
 		while(true) {
-			System.out.println("open");
+			System.out.println("close");
 			gripper.pose(1.0, 1.0, 0.0);
 			
 			System.out.println(gripper.getState());
 			Thread.sleep(500);
 			
-			System.out.println("close");
+			System.out.println("open");
 			gripper.pose(0.0, 1.0, 0.0);
 			System.out.println(gripper.getState());
 			Thread.sleep(500);
@@ -0,0 +1,38 @@
+package com.delmesoft.gripper.sim;
+
+import com.delmesoft.gripper.Gripper;
+import com.delmesoft.gripper.SerialGripper;
+import com.delmesoft.gripper.TcpGripper;
+
+public class GripperSimulatorTest {
+	
+	public static void main(String[] args) throws Exception {
+		
+		GripperSimulator simulator = new GripperSimulator();
+		simulator.setObjectPosition(200); // touched closing, gOBJ 0x02
+		simulator.setInternalObjectPosition(50); // touched opening, gOBJ 0x01
+		simulator.listen(0);
+		
+		Gripper[] grippers = { new TcpGripper("localhost", simulator.getPort()), new SerialGripper(simulator.createSerialPort()) };
+		for (Gripper gripper : grippers) {
+			gripper.connect();
+			
+			System.out.println("close");
+			gripper.pose(1.0, 1.0, 0.5);
+			System.out.println(gripper.getState());
+			Thread.sleep(1000);
+			System.out.println(gripper.getState());
+			
+			System.out.println("open");
+			gripper.pose(0.0, 1.0, 0.0);
+			System.out.println(gripper.getState());
+			Thread.sleep(1000);
+			System.out.println(gripper.getState());
+			
+			gripper.disconnect();
+		}
+		
+		simulator.close();
+	}
+
+}